@@ -0,0 +1,34 @@
+#!/usr/bin/env bash
+#
+# Compares two JMH result files written with -rf json, benchmark by benchmark and parameter by parameter,
+# a ratio above 1 means the second run is slower.
+#
+# usage: benchmarks/compare.sh <before.json> <after.json>
+
+set -euo pipefail
+
+python3 - "${1:?usage: $0 <before.json> <after.json>}" "${2:?usage: $0 <before.json> <after.json>}" <<'EOF'
+import json
+import sys
+
+
+def load(path):
+    with open(path) as file:
+        return {
+            (result["benchmark"].split(".", 1)[1],
+             ", ".join(f"{key}={value}" for key, value in sorted(result.get("params", {}).items()))):
+                result["primaryMetric"]
+            for result in json.load(file)
+        }
+
+
+before, after = load(sys.argv[1]), load(sys.argv[2])
+
+for key in sorted(before.keys() & after.keys()):
+    old, new = before[key], after[key]
+    print(f"{key[0]:<32} {key[1]:<48} {old['score']:>12.1f} {new['score']:>12.1f} {new['scoreUnit']:<6}"
+          f" {new['score'] / old['score']:>6.2f}x")
+
+for key in sorted(before.keys() ^ after.keys()):
+    print(f"{key[0]:<32} {key[1]:<48} only in {'before' if key in before else 'after'}")
+EOF
@@ -0,0 +1,290 @@
+package benchmarks;
+
+import indexer.index.CommitPolicy;
+import indexer.index.Index;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static java.lang.String.format;
+
+/**
+ * Generates the same english documents for a given seed, word frequencies follow Zipf's law over a fixed
+ * vocabulary and a few phrases are planted, so every query below has a known, stable number of hits.
+ */
+final class Corpus {
+
+    static final long seed = 0x1d3c5e7fL;
+
+    static final String term = "market";
+    static final String phrase = "\"quarterly revenue report\"";
+    static final String fuzzy = "custoner";
+
+    static final List<String> types = List.of("txt", "rtf", "pdf", "docx", "odt");
+
+    private static final String[] vocabulary = (
+            "the of and to in is that for it as was with be by on not he this are or his from at which but have " +
+            "an they you were her she there been one all we their has would when if so no will more can who its " +
+            "said about into than them time only new some could these two may first then do any like my now over " +
+            "such our man me even most made after also did many before must through back years where much your " +
+            "way well down should because each just those people how too little state good very make world still " +
+            "own see men work long get here between both life being under never day same another know while last " +
+            "might us great old year off come since against go came right used take three market customer price " +
+            "company service product business order account support team project system data report quarter " +
+            "revenue growth plan board meeting policy contract budget office manager member program review " +
+            "result process value change level group number problem question decision information development " +
+            "experience community research history industry student teacher family country government " +
+            "morning evening window garden river mountain village kitchen letter picture music journey harbour " +
+            "lantern orchard meadow compass engine signal bridge station railway carriage ticket passenger"
+    ).split(" ");
+
+    private static final double[] weights = new double[vocabulary.length];
+
+    static {
+
+        double total = 0;
+
+        for (int rank = 0; rank < vocabulary.length; rank++) {
+            total += 1.0 / (rank + 1);
+            weights[rank] = total;
+        }
+
+        for (int rank = 0; rank < vocabulary.length; rank++) {
+            weights[rank] /= total;
+        }
+
+    }
+
+    private final Random random;
+
+    Corpus(long seed) {
+        this.random = new Random(seed);
+    }
+
+    Corpus() {
+        this(seed);
+    }
+
+    private String word() {
+
+        int rank = Arrays.binarySearch(weights, random.nextDouble());
+        return vocabulary[rank < 0 ? -rank - 1 : rank];
+
+    }
+
+    /**
+     * Sentences of eight to sixteen words, one in twenty carries the planted phrase.
+     */
+    List<String> sentences(int words) {
+
+        List<String> sentences = new ArrayList<>();
+
+        while (words > 0) {
+
+            int length = Math.min(words, 8 + random.nextInt(9));
+            StringBuilder sentence = new StringBuilder();
+
+            for (int i = 0; i < length; i++) {
+                String word = word();
+                sentence.append(i == 0 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : word);
+                sentence.append(i + 1 < length ? ' ' : '.');
+            }
+
+            if (random.nextInt(20) == 0) {
+                sentence.insert(0, "The quarterly revenue report shows ");
+                sentence.setCharAt(35, Character.toLowerCase(sentence.charAt(35)));
+            }
+
+            sentences.add(sentence.toString());
+            words -= length;
+        }
+
+        return sentences;
+
+    }
+
+    /**
+     * Writes a document of the given type, one of {@link #types}.
+     */
+    Path write(Path directory, String name, String type, int words) throws IOException {
+
+        Path path = directory.resolve(format("%s.%s", name, type));
+        List<String> sentences = sentences(words);
+
+        switch (type) {
+            case "txt" : writeText(path, sentences); break;
+            case "rtf" : writeRtf(path, sentences); break;
+            case "pdf" : writePdf(path, sentences); break;
+            case "docx" : writeDocx(path, sentences); break;
+            case "odt" : writeOdt(path, sentences); break;
+            default :
+                throw new IllegalArgumentException(format("Unknown type: %s", type));
+        }
+
+        return path;
+
+    }
+
+    /**
+     * Writes plain text documents, named by their number so the order of files is stable.
+     */
+    List<Path> writeAll(Path directory, int documents, int words) throws IOException {
+
+        List<Path> paths = new ArrayList<>();
+
+        for (int i = 0; i < documents; i++) {
+            paths.add(write(directory, format("document-%06d", i), "txt", words));
+        }
+
+        return paths;
+
+    }
+
+    private static void writeText(Path path, List<String> sentences) throws IOException {
+        Files.write(path, String.join("\n", sentences).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeRtf(Path path, List<String> sentences) throws IOException {
+
+        StringBuilder rtf = new StringBuilder("{\\rtf1\\ansi\\deff0{\\fonttbl{\\f0 Times New Roman;}}\\f0\\fs24\n");
+        sentences.forEach(sentence -> rtf.append(sentence).append("\\par\n"));
+        rtf.append('}');
+
+        Files.write(path, rtf.toString().getBytes(StandardCharsets.US_ASCII));
+
+    }
+
+    private static void writePdf(Path path, List<String> sentences) throws IOException {
+
+        try (PDDocument document = new PDDocument()) {
+
+            int lines = 50;
+
+            for (int first = 0; first < sentences.size(); first += lines) {
+
+                PDPage page = new PDPage();
+                document.addPage(page);
+
+                try (PDPageContentStream stream = new PDPageContentStream(document, page)) {
+                    stream.beginText();
+                    stream.setFont(PDType1Font.TIMES_ROMAN, 10);
+                    stream.setLeading(14);
+                    stream.newLineAtOffset(40, 750);
+
+                    for (String sentence : sentences.subList(first, Math.min(sentences.size(), first + lines))) {
+                        stream.showText(sentence);
+                        stream.newLine();
+                    }
+
+                    stream.endText();
+                }
+            }
+
+            document.save(path.toFile());
+        }
+
+    }
+
+    private static void writeDocx(Path path, List<String> sentences) throws IOException {
+
+        try (XWPFDocument document = new XWPFDocument(); OutputStream output = Files.newOutputStream(path)) {
+            sentences.forEach(sentence -> document.createParagraph().createRun().setText(sentence));
+            document.write(output);
+        }
+
+    }
+
+    private static void writeOdt(Path path, List<String> sentences) throws IOException {
+
+        StringBuilder content = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<office:document-content xmlns:office=\"urn:oasis:names:tc:opendocument:xmlns:office:1.0\" " +
+                "xmlns:text=\"urn:oasis:names:tc:opendocument:xmlns:text:1.0\" office:version=\"1.2\">" +
+                "<office:body><office:text>");
+        sentences.forEach(sentence -> content.append("<text:p>").append(sentence).append("</text:p>"));
+        content.append("</office:text></office:body></office:document-content>");
+
+        String manifest = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<manifest:manifest xmlns:manifest=\"urn:oasis:names:tc:opendocument:xmlns:manifest:1.0\" " +
+                "manifest:version=\"1.2\">" +
+                "<manifest:file-entry manifest:full-path=\"/\" " +
+                "manifest:media-type=\"application/vnd.oasis.opendocument.text\"/>" +
+                "<manifest:file-entry manifest:full-path=\"content.xml\" manifest:media-type=\"text/xml\"/>" +
+                "</manifest:manifest>";
+
+        byte[] type = "application/vnd.oasis.opendocument.text".getBytes(StandardCharsets.US_ASCII);
+
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(path))) {
+
+            // the media type comes first and uncompressed, that is what detection looks at
+            ZipEntry mimetype = new ZipEntry("mimetype");
+            CRC32 crc = new CRC32();
+            crc.update(type);
+            mimetype.setMethod(ZipEntry.STORED);
+            mimetype.setSize(type.length);
+            mimetype.setCrc(crc.getValue());
+
+            zip.putNextEntry(mimetype);
+            zip.write(type);
+            zip.closeEntry();
+
+            zip.putNextEntry(new ZipEntry("content.xml"));
+            zip.write(content.toString().getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+
+            zip.putNextEntry(new ZipEntry("META-INF/manifest.xml"));
+            zip.write(manifest.getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+
+    }
+
+    /**
+     * Indexes the documents into a new index and commits it.
+     */
+    static void index(Path location, List<Path> documents) throws IOException {
+
+        try (Index index = new Index(location, CommitPolicy.grouped(0, 0, 64))) {
+            for (Path document : documents) {
+                index.addDocument(document);
+            }
+            index.commit();
+        }
+
+    }
+
+    static void delete(Path directory) {
+
+        if (directory == null || Files.notExists(directory)) {
+            return;
+        }
+
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+        catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+
+    }
+
+}
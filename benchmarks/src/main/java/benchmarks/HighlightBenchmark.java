@@ -0,0 +1,73 @@
+package benchmarks;
+
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.uhighlight.UnifiedHighlighter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Context generation for the first page of hits, the way a detailed search highlights them, under both
+ * index layouts: {@code full} re-analyzes the stored text, {@code compact} reads offsets from the postings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = "-Dindexer.cache.megabytes=0")
+public class HighlightBenchmark {
+
+    private static final String field = "contents_en";
+
+    @Param({"full", "compact"})
+    public String layout;
+
+    @Param({"term", "phrase"})
+    public String type;
+
+    @Param({"5000"})
+    public int documents;
+
+    @Param({"300"})
+    public int words;
+
+    private IndexedCorpus corpus;
+    private IndexSearcher searcher;
+    private UnifiedHighlighter highlighter;
+    private Query query;
+    private TopDocs tops;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, ParseException {
+
+        // read once when the configuration is first loaded, every trial runs in a fork of its own
+        System.setProperty("indexer.layout", layout);
+
+        corpus = new IndexedCorpus(documents, words);
+        searcher = corpus.getSearches().acquire();
+        highlighter = corpus.getSearches().getHighlighter(searcher, "en", corpus.getProperties().getContextColor());
+
+        query = new QueryParser(field, corpus.getSearches().getAnalyzer("en"))
+                .parse(type.equals("term") ? Corpus.term : Corpus.phrase);
+        tops = searcher.search(query, corpus.getProperties().getSearchLimit());
+
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        corpus.getSearches().release(searcher);
+        corpus.close();
+    }
+
+    @Benchmark
+    public String[] highlight() throws IOException {
+        return highlighter.highlight(field, query, tops, corpus.getProperties().getContextPassage());
+    }
+
+}
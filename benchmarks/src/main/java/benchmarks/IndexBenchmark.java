@@ -0,0 +1,91 @@
+package benchmarks;
+
+import indexer.index.CommitPolicy;
+import indexer.index.Index;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adding and updating single plain text documents under the commit policies of {@link CommitPolicy},
+ * every iteration starts from a fresh index holding the whole corpus; commits left pending at the end
+ * of an iteration are not measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = "-Dindexer.cache.megabytes=0")
+public class IndexBenchmark {
+
+    @Param({"durable", "documents", "millis", "megabytes"})
+    public String policy;
+
+    @Param({"500"})
+    public int documents;
+
+    @Param({"300"})
+    public int words;
+
+    private Path directory;
+    private List<Path> paths;
+    private Index index;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("benchmark");
+        paths = new Corpus().writeAll(Files.createDirectory(directory.resolve("documents")), documents, words);
+    }
+
+    @Setup(Level.Iteration)
+    public void open() throws IOException {
+
+        Path location = directory.resolve("index");
+        Corpus.delete(location);
+        Corpus.index(location, paths);
+
+        index = new Index(location, getPolicy());
+        next = 0;
+
+    }
+
+    private CommitPolicy getPolicy() {
+
+        switch (policy) {
+            case "durable" : return CommitPolicy.durable();
+            case "documents" : return CommitPolicy.grouped(1000, 0, 0);
+            case "millis" : return CommitPolicy.grouped(0, 1000, 0);
+            case "megabytes" : return CommitPolicy.grouped(0, 0, 64);
+            default :
+                throw new IllegalArgumentException(policy);
+        }
+
+    }
+
+    @TearDown(Level.Iteration)
+    public void close() throws IOException {
+        index.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Corpus.delete(directory);
+    }
+
+    @Benchmark
+    public boolean addDocument() throws IOException {
+        return index.addDocument(paths.get(next++ % paths.size()));
+    }
+
+    @Benchmark
+    public void updateDocument() throws IOException {
+        index.updateDocument(paths.get(next++ % paths.size()));
+    }
+
+}
@@ -0,0 +1,51 @@
+package benchmarks;
+
+import config.Properties;
+import searcher.Searches;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Generated documents indexed into a scratch directory, with a searcher over them.
+ */
+final class IndexedCorpus implements AutoCloseable {
+
+    private final Path directory;
+    private final Properties properties;
+    private final Searches searches;
+
+    IndexedCorpus(int documents, int words) throws IOException {
+
+        this.directory = Files.createTempDirectory("benchmark");
+
+        Path contents = Files.createDirectory(directory.resolve("documents"));
+        Corpus.index(directory.resolve("index"), new Corpus().writeAll(contents, documents, words));
+
+        this.properties = Properties.getDefault();
+        this.properties.setSearchLanguage("en");
+        this.properties.setSearchLimit(10);
+        this.properties.setContextDetails(false);
+        this.properties.setContextColor("none");
+        this.properties.setSearchScope(null);
+
+        this.searches = new Searches(directory.resolve("index"), properties);
+
+    }
+
+    Properties getProperties() {
+        return properties;
+    }
+
+    Searches getSearches() {
+        return searches;
+    }
+
+    @Override
+    public void close() throws IOException {
+        searches.close();
+        Corpus.delete(directory);
+    }
+
+}
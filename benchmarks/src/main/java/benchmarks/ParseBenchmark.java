@@ -0,0 +1,50 @@
+package benchmarks;
+
+import indexer.parse.Contents;
+import indexer.parse.ParseException;
+import org.apache.tika.exception.TikaException;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Text extraction and language detection of a single document per supported type.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {
+        "-Dindexer.cache.megabytes=0", "-Dorg.slf4j.simpleLogger.log.org.apache.pdfbox=error"})
+public class ParseBenchmark {
+
+    @Param({"txt", "rtf", "pdf", "docx", "odt"})
+    public String type;
+
+    @Param({"2000"})
+    public int words;
+
+    private Path directory;
+    private Path document;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("benchmark");
+        document = new Corpus().write(directory, "document", type, words);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Corpus.delete(directory);
+    }
+
+    @Benchmark
+    public Contents parse() throws ParseException, TikaException {
+        return Contents.parse(document);
+    }
+
+}
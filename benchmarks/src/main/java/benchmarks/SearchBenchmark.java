@@ -0,0 +1,60 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import searcher.result.Page;
+import searcher.search.Search;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the first page of a query per search type, without highlighting and bypassing the result cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Dindexer.cache.megabytes=0", "-Dsearcher.cache.entries=0"})
+public class SearchBenchmark {
+
+    @Param({"term", "phrase", "fuzzy"})
+    public String type;
+
+    @Param({"5000"})
+    public int documents;
+
+    @Param({"300"})
+    public int words;
+
+    private IndexedCorpus corpus;
+    private Search search;
+    private String query;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+
+        corpus = new IndexedCorpus(documents, words);
+        search = corpus.getSearches().forType(type);
+
+        switch (type) {
+            case "term" : query = Corpus.term; break;
+            case "phrase" : query = Corpus.phrase; break;
+            case "fuzzy" : query = Corpus.fuzzy; break;
+            default :
+                throw new IllegalArgumentException(type);
+        }
+
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        corpus.close();
+    }
+
+    @Benchmark
+    public Page page() throws IOException {
+        return search.page(query, null);
+    }
+
+}
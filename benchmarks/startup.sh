@@ -0,0 +1,64 @@
+#!/usr/bin/env bash
+#
+# Measures the startup and run time of every command against a scratch index,
+# prints the median of each and fails if a command is slower than a budget.
+#
+# usage: benchmarks/startup.sh <documents directory> [runs] [budget in ms]
+
+set -euo pipefail
+
+documents=$(realpath "${1:?usage: $0 <documents directory> [runs] [budget in ms]}")
+runs=${2:-5}
+budget=${3:-0}
+
+jar=${JAR:-$(ls "$(dirname "$0")"/../target/*-jar-with-dependencies.jar | head -1)}
+home=$(mktemp -d)
+trap 'rm -rf "$home"' EXIT
+
+run() {
+    java -Duser.home="$home" ${JAVA_OPTS:-} -jar "$jar" "$@" 2>&1 >/dev/null | sed 's/\x1b\[[0-9;]*m//g' \
+        | grep -o 'Finished: .*' || true
+}
+
+median() {
+    sort -n | awk '{ values[NR] = $1 } END { print values[int((NR + 1) / 2)] }'
+}
+
+run --add "$documents" > /dev/null
+
+failed=0
+
+for command in "--list" "--query lorem" "--refresh" "--reindex" "--rm $documents" "--add $documents"; do
+
+    startups=()
+    totals=()
+
+    for ((i = 0; i < runs; i++)); do
+        if [[ $command == --add* ]]; then
+            run --rm "$documents" > /dev/null
+        fi
+
+        line=$(run $command)
+        startup=$(sed -E 's/.*startup: ([0-9-]+) ms.*/\1/' <<< "$line")
+        took=$(sed -E 's/.*took: ([0-9]+) ms.*/\1/' <<< "$line")
+        startups+=("$startup")
+        totals+=("$((startup + took))")
+
+        if [[ $command == --rm* ]]; then
+            run --add "$documents" > /dev/null
+        fi
+    done
+
+    startup=$(printf '%s\n' "${startups[@]}" | median)
+    total=$(printf '%s\n' "${totals[@]}" | median)
+
+    printf '%-12s startup: %6d ms, total: %6d ms\n' "${command%% *}" "$startup" "$total"
+
+    if ((budget > 0 && total > budget)); then
+        echo "  over the budget of $budget ms" >&2
+        failed=1
+    fi
+
+done
+
+exit $failed
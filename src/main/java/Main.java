@@ -1,20 +1,27 @@
 import config.Configuration;
+import daemon.Client;
+import daemon.Daemon;
 import indexer.index.Index;
 import indexer.shelve.Shelve;
 import indexer.watch.WatchDirectory;
+import indexer.watch.IndexHandler;
 import org.apache.commons.cli.*;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jline.reader.EndOfFileException;
 import org.jline.reader.UserInterruptException;
+import searcher.batch.Batch;
 import searcher.interpreter.Interpreter;
 
-import java.io.IOException;
-import java.io.UncheckedIOException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashSet;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static java.lang.String.format;
 import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
@@ -34,29 +41,79 @@ public final class Main {
     }
 
     private static void purge() throws IOException {
+
+        if (forward("purge", null, null)) {
+            return;
+        }
+
         try (Index index = new Index(Configuration.getIndexPath())) {
             index.purge();
         }
     }
 
+    private static Shelve openShelve() throws IOException {
+        return new Shelve(Configuration.getIndexPath().resolve("directories"));
+    }
+
+    /**
+     * Hands the command over to a running daemon, returns false if there is none.
+     */
+    private static boolean forward(String command, String argument, BufferedReader input) throws IOException {
+
+        Client client = Client.connect();
+
+        if (client == null) {
+            return false;
+        }
+
+        client.run(command, argument, input, System.out);
+        return true;
+
+    }
+
     private static void list() throws IOException {
-        try (Shelve<String> shelve = new Shelve<>(
-                Configuration.getIndexPath().resolve("directories.shelve"),
-                HashSet.class)) {
-            shelve.getShelf().forEach(System.out::println);
+
+        if (forward("list", null, null)) {
+            return;
         }
+
+        try (Shelve shelve = openShelve()) {
+            shelve.getRoots().forEach(System.out::println);
+        }
+
     }
 
     private static void reindex() throws IOException {
+
+        if (forward("reindex", null, null)) {
+            return;
+        }
+
         try (Index index = new Index(Configuration.getIndexPath());
-             Shelve<String> shelve = new Shelve<>(
-                     Configuration.getIndexPath().resolve("directories.shelve"),
-                     HashSet.class)) {
+             Shelve shelve = openShelve()) {
 
             index.purge();
 
-            for (String pathString : shelve.getShelf()) {
-                index.addDocuments(Paths.get(pathString));
+            for (Shelve.Root root : shelve.getRoots()) {
+                int files = index.addDocuments(Paths.get(root.getPath()));
+                shelve.update(root.getPath(), files, System.currentTimeMillis());
+            }
+
+        }
+    }
+
+    private static void refresh() throws IOException {
+
+        if (forward("refresh", null, null)) {
+            return;
+        }
+
+        try (Index index = new Index(Configuration.getIndexPath());
+             Shelve shelve = openShelve()) {
+
+            for (Shelve.Root root : shelve.getRoots()) {
+                int files = index.refreshDocuments(Paths.get(root.getPath()));
+                shelve.update(root.getPath(), files, System.currentTimeMillis());
             }
 
         }
@@ -68,17 +125,22 @@ public final class Main {
 
             Path realPath = path.toRealPath(NOFOLLOW_LINKS);
 
-            try (Shelve<String> shelve = new Shelve<>(
-                         Configuration.getIndexPath().resolve("directories.shelve"),
-                         HashSet.class)) {
+            if (forward("add", realPath.toString(), null)) {
+                return;
+            }
+
+            try (Shelve shelve = openShelve()) {
 
-                if (!shelve.getShelf().contains(realPath.toString())) {
+                if (!shelve.contains(realPath.toString())) {
+
+                    int files;
 
                     try (Index index = new Index(Configuration.getIndexPath())) {
-                        index.addDocuments(realPath);
+                        files = index.addDocuments(realPath);
                     }
 
-                    shelve.getShelf().add(realPath.toString());
+                    shelve.add(realPath.toString());
+                    shelve.update(realPath.toString(), files, System.currentTimeMillis());
                 }
 
             }
@@ -91,17 +153,19 @@ public final class Main {
 
         Path realPath = path.toRealPath(NOFOLLOW_LINKS);
 
-        try (Shelve<String> shelve = new Shelve<>(
-                     Configuration.getIndexPath().resolve("directories.shelve"),
-                     HashSet.class)) {
+        if (forward("rm", realPath.toString(), null)) {
+            return;
+        }
+
+        try (Shelve shelve = openShelve()) {
 
-            if (shelve.getShelf().contains(realPath.toString())) {
+            if (shelve.contains(realPath.toString())) {
 
                 try (Index index = new Index(Configuration.getIndexPath())) {
                     index.deleteDocuments(realPath);
                 }
 
-                shelve.getShelf().remove(realPath.toString());
+                shelve.remove(realPath.toString());
             } else {
                 logger.warn(format("Failed to remove: %s, is not on the list", realPath));
             }
@@ -112,35 +176,39 @@ public final class Main {
 
     private static void watch() throws IOException {
 
-        Index index = new Index(Configuration.getIndexPath());
+        Index index = new Index(Configuration.getIndexPath(), Configuration.Indexing.getWatchCommitPolicy());
         WatchDirectory watch = new WatchDirectory();
-        Shelve<String> shelve = new Shelve<>(
-                Configuration.getIndexPath().resolve("directories.shelve"),
-                HashSet.class);
-
-        for (String pathString : shelve.getShelf()) {
-            watch.registerAll(Paths.get(pathString));
-        }
-
-        watch.run(((path, kind) -> {
-            switch (kind.name()) {
-                case "ENTRY_CREATE":
-                    if (Files.isDirectory(path)) {
-                        watch.registerAll(path);
-                    }
-                    index.addDocuments(path);
-                    break;
-                case "ENTRY_MODIFY":
-                    if (Files.isRegularFile(path)) {
-                        index.updateDocument(path);
-                    }
-                    break;
-                case "ENTRY_DELETE":
-                    index.deleteDocuments(path);
-                    break;
+        CountDownLatch stopped = new CountDownLatch(1);
+
+        // the watcher and its dispatcher still write to the index until run returns
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                watch.stop();
+                stopped.await(1, TimeUnit.MINUTES);
+                index.close();
+            }
+            catch (IOException exception) {
+                logger.error(format("Failed to close index, caused by: %s, reason: %s",
+                        exception.getClass(), exception.getMessage()));
+            }
+            catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
             }
         }));
 
+        try {
+            try (Shelve shelve = openShelve()) {
+                for (Shelve.Root root : shelve.getRoots()) {
+                    watch.registerAll(Paths.get(root.getPath()));
+                }
+            }
+
+            watch.run(new IndexHandler(watch, index));
+        }
+        finally {
+            stopped.countDown();
+        }
+
     }
 
     private static void search() throws IOException {
@@ -156,8 +224,56 @@ public final class Main {
 
     }
 
+    private static void query(BufferedReader queries) throws IOException {
+
+        if (forward("queries", null, queries)) {
+            return;
+        }
+
+        try (Batch batch = new Batch(Configuration.getIndexPath())) {
+            batch.run(queries, System.out);
+        }
+
+    }
+
+    private static void daemon() throws IOException {
+
+        Daemon daemon = new Daemon(Configuration.getIndexPath());
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                daemon.close();
+            }
+            catch (IOException exception) {
+                logger.error(format("Failed to close daemon, caused by: %s, reason: %s",
+                        exception.getClass(), exception.getMessage()));
+            }
+        }));
+
+        daemon.run();
+
+    }
+
+    private static void stop() throws IOException {
+        if (!forward("stop", null, null)) {
+            logger.warn("Failed to stop daemon, none is running");
+        }
+    }
+
+    /**
+     * Milliseconds from the start of the process to now, or -1 if the start time is not known.
+     */
+    private static long getUptimeMillis() {
+        return ProcessHandle.current().info().startInstant()
+                .map(instant -> Duration.between(instant, Instant.now()).toMillis())
+                .orElse(-1L);
+    }
+
     public static void main(String[] args) {
 
+        long startup = getUptimeMillis();
+        long start = System.nanoTime();
+
         Options options = new Options();
 
         Option search = Option.builder()
@@ -196,6 +312,15 @@ public final class Main {
 
         options.addOption(reindex);
 
+        Option refresh = Option.builder()
+                .argName("refresh")
+                .longOpt("refresh")
+                .hasArg(false)
+                .desc("Reindexes new and changed files, removes vanished ones")
+                .build();
+
+        options.addOption(refresh);
+
         Option purge = Option.builder()
                 .argName("purge")
                 .longOpt("purge")
@@ -214,20 +339,76 @@ public final class Main {
 
         options.addOption(list);
 
+        Option query = Option.builder()
+                .argName("query")
+                .longOpt("query")
+                .hasArg(true)
+                .desc("Runs a single query, prints results as JSON lines")
+                .build();
+
+        options.addOption(query);
+
+        Option queries = Option.builder()
+                .argName("queries")
+                .longOpt("queries-file")
+                .hasArg(true)
+                .desc("Runs queries from a file, one per line, or from standard input for -, " +
+                        "prints results as JSON lines")
+                .build();
+
+        options.addOption(queries);
+
+        Option daemon = Option.builder()
+                .argName("daemon")
+                .longOpt("daemon")
+                .hasArg(false)
+                .desc("Runs in the background, owning the index and watching monitored directories, " +
+                        "other commands are handed over to it")
+                .build();
+
+        options.addOption(daemon);
+
+        Option stop = Option.builder()
+                .argName("stop")
+                .longOpt("stop")
+                .hasArg(false)
+                .desc("Stops the running daemon")
+                .build();
+
+        options.addOption(stop);
+
         try {
 
             CommandLineParser parser = new DefaultParser();
             CommandLine commands = parser.parse(options, args);
 
+            String command = commands.getOptions().length == 0 ? "watch" : commands.getOptions()[0].getArgName();
+
             switch (commands.getOptions().length) {
                 case 0 :
                     watch(); break;
                 case 1 :
                     switch (commands.getOptions()[0].getArgName()) {
                         case "reindex" : reindex(); break;
+                        case "refresh" : refresh(); break;
                         case "purge" : purge(); break;
                         case "list" : list(); break;
                         case "search" : search(); break;
+                        case "daemon" : daemon(); break;
+                        case "stop" : stop(); break;
+
+                        case "query" :
+                            query(new BufferedReader(new StringReader(commands.getOptionValue("query"))));
+                            break;
+                        case "queries" : {
+                            String file = commands.getOptionValue("queries-file");
+                            try (BufferedReader reader = file.equals("-") ?
+                                    new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)) :
+                                    Files.newBufferedReader(Paths.get(file))) {
+                                query(reader);
+                            }
+                            break;
+                        }
 
                         case "add" :
                             add(Paths.get(commands.getOptionValue("add")));
@@ -242,6 +423,9 @@ public final class Main {
                     throw new ParseException("Too many options provided");
             }
 
+            logger.info(format("Finished: %s, startup: %d ms, took: %d ms",
+                    command, startup, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+
         }
         catch (ParseException exception) {
             HelpFormatter formatter = new HelpFormatter();
@@ -1,10 +1,12 @@
 package config;
 
+import indexer.index.CommitPolicy;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.en.EnglishAnalyzer;
 import org.apache.lucene.analysis.pl.PolishAnalyzer;
+import org.apache.lucene.util.automaton.LevenshteinAutomata;
 import searcher.search.FuzzySearch;
 import searcher.search.PhraseSearch;
 import searcher.search.Search;
@@ -13,6 +15,7 @@ import searcher.search.TermSearch;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -37,11 +40,68 @@ public final class Configuration {
                 "openxml", "opendocument"
         );
 
+        private static final Set<String> documentExtensions = Set.of(
+                "txt", "text", "md", "csv", "log", "pdf", "rtf",
+                "docx", "docm", "xlsx", "xlsm", "pptx", "pptm", "odt", "ods", "odp"
+        );
+
+        private static final Set<String> rejectedExtensions = Set.of(
+                "exe", "dll", "so", "dylib", "o", "a", "obj", "class", "jar", "war", "pyc",
+                "zip", "gz", "tgz", "bz2", "xz", "7z", "rar", "iso", "dmg", "img", "bin",
+                "png", "jpg", "jpeg", "gif", "bmp", "tif", "tiff", "ico", "webp", "psd",
+                "mp3", "mp4", "m4a", "avi", "mkv", "mov", "wav", "flac", "ogg",
+                "ttf", "otf", "woff", "woff2", "db", "sqlite", "lock", "swp"
+        );
+
+        private static final List<String> ignoredPatterns = List.of(System.getProperty(
+                "indexer.ignore", ".git,.svn,.hg,node_modules,__pycache__,.idea,.DS_Store").split(","));
+
+        private static final int characterLimit = Integer.getInteger("indexer.parse.chars", 1_000_000);
+
+        private static final int storedLimit = Integer.getInteger("indexer.parse.stored", 100_000);
+
+        private static final boolean streaming = Boolean.parseBoolean(
+                System.getProperty("indexer.parse.streaming", "true"));
+
+        private static final boolean compact = "compact".equals(System.getProperty("indexer.layout", "full"));
+
         static {
 
             logger.debug(format("Supported document types: %s", documentTypes));
             logger.debug(format("Supported document groups: %s", documentGroups));
+            logger.debug(format("Ignored patterns: %s", ignoredPatterns));
+            logger.debug(format("Extracted characters limit: %d, streaming: %s, stored characters limit: %d",
+                    characterLimit, streaming, storedLimit));
+            logger.debug(format("Index layout: %s", compact ? "compact" : "full"));
+
+        }
+
+        public static boolean isDocumentExtension(String extension) {
+            return documentExtensions.contains(extension);
+        }
+
+        public static boolean isRejectedExtension(String extension) {
+            return rejectedExtensions.contains(extension);
+        }
+
+        public static List<String> getIgnoredPatterns() {
+            return ignoredPatterns;
+        }
+
+        public static int getCharacterLimit() {
+            return characterLimit;
+        }
+
+        public static int getStoredLimit() {
+            return storedLimit;
+        }
+
+        public static boolean isStreaming() {
+            return streaming;
+        }
 
+        public static boolean isCompact() {
+            return compact;
         }
 
         public static boolean isSupported(String description) {
@@ -51,6 +111,302 @@ public final class Configuration {
 
     }
 
+    public static final class Indexing {
+
+        private static final int parseWorkers = Integer.getInteger(
+                "indexer.workers", Runtime.getRuntime().availableProcessors());
+
+        private static final int queueCapacity = Integer.getInteger(
+                "indexer.queue", 4 * parseWorkers);
+
+        private static final long cacheBytes = 1024L * 1024L * Long.getLong("indexer.cache.megabytes", 512);
+
+        private static final boolean suggesting = Boolean.parseBoolean(System.getProperty("indexer.suggest", "true"));
+
+        private static final int shelveRecords = Integer.getInteger("indexer.shelve.records", 256);
+
+        private static final CommitPolicy commitPolicy = CommitPolicy.grouped(
+                Integer.getInteger("indexer.commit.documents", 1000),
+                Long.getLong("indexer.commit.millis", 1000),
+                Double.parseDouble(System.getProperty("indexer.commit.megabytes", "64")));
+
+        private static final CommitPolicy watchCommitPolicy =
+                Boolean.parseBoolean(System.getProperty("indexer.watch.durable", "true")) ?
+                        CommitPolicy.durable() : commitPolicy;
+
+        static {
+
+            logger.debug(format("Parse workers: %d, queue capacity: %d", parseWorkers, queueCapacity));
+            logger.debug(format("Commit policy: %s, in watch mode: %s", commitPolicy, watchCommitPolicy));
+            logger.debug(format("Extraction cache capacity: %d bytes", cacheBytes));
+            logger.debug(format("Maintaining suggestions: %s", suggesting));
+
+        }
+
+        public static int getShelveRecords() {
+            return shelveRecords;
+        }
+
+        public static boolean isSuggesting() {
+            return suggesting;
+        }
+
+        public static long getCacheBytes() {
+            return cacheBytes;
+        }
+
+        public static CommitPolicy getCommitPolicy() {
+            return commitPolicy;
+        }
+
+        public static CommitPolicy getWatchCommitPolicy() {
+            return watchCommitPolicy;
+        }
+
+        public static int getParseWorkers() {
+            return parseWorkers;
+        }
+
+        public static int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+    }
+
+    public static final class Watching {
+
+        private static final long quietMillis = Long.getLong("indexer.watch.quiet", 500);
+
+        private static final int dispatchWorkers = Integer.getInteger("indexer.watch.workers", 2);
+
+        private static final int registerThreads = Integer.getInteger(
+                "indexer.watch.registrars", Runtime.getRuntime().availableProcessors());
+
+        private static final int watchLimit = Integer.getInteger("indexer.watch.limit", Integer.MAX_VALUE);
+
+        private static final long pollMillis = Long.getLong("indexer.watch.poll", 5000);
+
+        private static final int pollThreads = Integer.getInteger("indexer.watch.pollers", 2);
+
+        static {
+
+            logger.debug(format("Watch quiet window: %d ms, dispatch workers: %d", quietMillis, dispatchWorkers));
+            logger.debug(format("Watch registrars: %d, limit: %d, polling fallback every: %d ms, with: %d thread(s)",
+                    registerThreads, watchLimit, pollMillis, pollThreads));
+
+        }
+
+        public static int getRegisterThreads() {
+            return registerThreads;
+        }
+
+        public static int getWatchLimit() {
+            return watchLimit;
+        }
+
+        public static long getPollMillis() {
+            return pollMillis;
+        }
+
+        public static int getPollThreads() {
+            return pollThreads;
+        }
+
+        public static long getQuietMillis() {
+            return quietMillis;
+        }
+
+        public static int getDispatchWorkers() {
+            return dispatchWorkers;
+        }
+
+    }
+
+    public static final class Searching {
+
+        private static final String searchType = System.getProperty("searcher.type", "term");
+
+        private static final String searchLanguage = System.getProperty("searcher.language", "en");
+
+        private static final int searchLimit = Integer.getInteger("searcher.limit", 5);
+
+        private static final boolean contextDetails = Boolean.parseBoolean(
+                System.getProperty("searcher.details", "false"));
+
+        private static final String searchScope = System.getProperty("searcher.scope");
+
+        private static final int scopeEntries = Integer.getInteger("searcher.scope.entries", 256);
+
+        private static final int batchWorkers = Integer.getInteger(
+                "searcher.batch.workers", Runtime.getRuntime().availableProcessors());
+
+        private static final long stalenessMillis = Long.getLong("searcher.staleness", 1000);
+
+        private static final int cacheEntries = Integer.getInteger("searcher.cache.entries", 256);
+
+        private static final int pageSize = Integer.getInteger("searcher.page", 1000);
+
+        private static final long pageSeconds = Long.getLong("searcher.page.seconds", 600);
+
+        private static final int suggestionLimit = Integer.getInteger("searcher.suggestions", 10);
+
+        private static final int searchWorkers = Integer.getInteger("searcher.workers", 1);
+
+        private static final int sliceDocuments = Integer.getInteger("searcher.slice.documents", 250_000);
+
+        private static final int sliceSegments = Integer.getInteger("searcher.slice.segments", 5);
+
+        private static final int fuzzyEdits = Math.min(LevenshteinAutomata.MAXIMUM_SUPPORTED_DISTANCE,
+                Integer.getInteger("searcher.fuzzy.edits", 2));
+
+        private static final int fuzzyPrefix = Integer.getInteger("searcher.fuzzy.prefix", 0);
+
+        private static final int fuzzyExpansions = Integer.getInteger("searcher.fuzzy.expansions", 50);
+
+        private static final boolean fuzzyTranspositions = Boolean.parseBoolean(
+                System.getProperty("searcher.fuzzy.transpositions", "true"));
+
+        private static final int fuzzyAutomata = Integer.getInteger("searcher.fuzzy.automata", 1024);
+
+        private static final boolean fuzzyNgrams = Boolean.parseBoolean(
+                System.getProperty("searcher.fuzzy.ngrams", "false"));
+
+        static {
+
+            logger.debug(format("Searcher max staleness: %d ms, result cache entries: %d, page size: %d, " +
+                    "page session: %d s, suggestions: %d", stalenessMillis, cacheEntries, pageSize, pageSeconds,
+                    suggestionLimit));
+            logger.debug(format("Default search: %s, language: %s, limit: %d, details: %s, scope: %s, " +
+                    "batch workers: %d", searchType, searchLanguage, searchLimit, contextDetails, searchScope,
+                    batchWorkers));
+            logger.debug(format("Cached scope filters: %d", scopeEntries));
+            logger.debug(format("Search workers: %d, slice documents: %d, slice segments: %d",
+                    searchWorkers, sliceDocuments, sliceSegments));
+            logger.debug(format("Fuzzy max edits: %d, prefix: %d, expansions: %d, transpositions: %s, " +
+                            "cached automata: %d, n-gram candidates: %s", fuzzyEdits, fuzzyPrefix, fuzzyExpansions,
+                    fuzzyTranspositions, fuzzyAutomata, fuzzyNgrams));
+
+        }
+
+        public static int getFuzzyEdits() {
+            return fuzzyEdits;
+        }
+
+        public static int getFuzzyPrefix() {
+            return fuzzyPrefix;
+        }
+
+        public static int getFuzzyExpansions() {
+            return fuzzyExpansions;
+        }
+
+        public static boolean isFuzzyTranspositions() {
+            return fuzzyTranspositions;
+        }
+
+        public static int getFuzzyAutomata() {
+            return fuzzyAutomata;
+        }
+
+        public static boolean isFuzzyNgrams() {
+            return fuzzyNgrams;
+        }
+
+        public static int getSearchWorkers() {
+            return searchWorkers;
+        }
+
+        public static int getSliceDocuments() {
+            return sliceDocuments;
+        }
+
+        public static int getSliceSegments() {
+            return sliceSegments;
+        }
+
+        public static String getSearchType() {
+            return searchType;
+        }
+
+        public static String getSearchLanguage() {
+            return searchLanguage;
+        }
+
+        public static int getSearchLimit() {
+            return searchLimit;
+        }
+
+        public static boolean getContextDetails() {
+            return contextDetails;
+        }
+
+        public static String getSearchScope() {
+            return searchScope;
+        }
+
+        public static int getScopeEntries() {
+            return scopeEntries;
+        }
+
+        public static int getBatchWorkers() {
+            return batchWorkers;
+        }
+
+        public static int getSuggestionLimit() {
+            return suggestionLimit;
+        }
+
+        public static int getPageSize() {
+            return pageSize;
+        }
+
+        public static long getPageSeconds() {
+            return pageSeconds;
+        }
+
+        public static int getCacheEntries() {
+            return cacheEntries;
+        }
+
+        public static long getStalenessMillis() {
+            return stalenessMillis;
+        }
+
+    }
+
+    public static final class Daemon {
+
+        private static final int port = Integer.getInteger("daemon.port", 0);
+
+        private static final int workers = Integer.getInteger("daemon.workers", 4);
+
+        private static final int connectMillis = Integer.getInteger("daemon.connect.millis", 500);
+
+        static {
+
+            logger.debug(format("Daemon port: %s, workers: %d, client connect timeout: %d ms",
+                    port == 0 ? "any" : port, workers, connectMillis));
+
+        }
+
+        public static Path getEndpointPath() {
+            return getIndexPath().resolve("daemon.endpoint");
+        }
+
+        public static int getPort() {
+            return port;
+        }
+
+        public static int getWorkers() {
+            return workers;
+        }
+
+        public static int getConnectMillis() {
+            return connectMillis;
+        }
+
+    }
+
     public static final class Searches {
 
         private static final Map<String, Class<? extends Search>> searchTypes = Map.of(
@@ -97,10 +453,19 @@ public final class Configuration {
                 "en", EnglishAnalyzer.class
         );
 
+        private static final String allLanguages = "all";
+
+        private static final int detectionSample = Integer.getInteger("indexer.detect.sample", 4096);
+
         static {
 
             logger.debug(format("Supported language analyzers: %s", languageAnalyzers));
+            logger.debug(format("Language detection sample: %d characters", detectionSample));
+
+        }
 
+        public static int getDetectionSample() {
+            return detectionSample;
         }
 
         public static Map<String, Analyzer> getAnalyzers() {
@@ -128,11 +493,16 @@ public final class Configuration {
             return languageAnalyzers.containsKey(language);
         }
 
+        public static boolean isAll(String language) {
+            return allLanguages.equals(language);
+        }
+
     }
 
     public static final class Colors {
 
         private static final Map<String, String> colorCodes = Map.of(
+                "none", "",
                 "default", "\u001b[0m",
                 "bold", "\u001B[1m",
                 "red", "\u001b[31m"
@@ -1,12 +1,26 @@
 package config;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 public final class Properties {
 
     public static Properties getDefault() {
-        return new Properties(
+
+        Properties properties = new Properties(
                 new Search("term", "en", 5),
                 new Context(false, "default", 5)
         );
+
+        properties.setSearchType(config.Configuration.Searching.getSearchType());
+        properties.setSearchLanguage(config.Configuration.Searching.getSearchLanguage());
+        properties.setSearchLimit(config.Configuration.Searching.getSearchLimit());
+        properties.setContextDetails(config.Configuration.Searching.getContextDetails());
+        properties.setSearchScope(config.Configuration.Searching.getSearchScope());
+
+        return properties;
+
     }
 
     private final Search search;
@@ -32,11 +46,36 @@ public final class Properties {
     }
 
     public void setSearchLanguage(String language) {
-        if (config.Configuration.Languages.isSupported(language)) {
+        if (config.Configuration.Languages.isSupported(language) || config.Configuration.Languages.isAll(language)) {
             search.language = language;
         }
     }
 
+    /**
+     * Directory the searches are restricted to, or {@code null} for the whole index.
+     */
+    public String getSearchScope() {
+        return search.scope;
+    }
+
+    public void setSearchScope(String scope) {
+
+        if (scope == null || scope.isBlank()) {
+            search.scope = null;
+            return;
+        }
+
+        Path path = Paths.get(scope.trim());
+
+        try {
+            search.scope = path.toRealPath().toString();
+        }
+        catch (IOException exception) {
+            search.scope = path.toAbsolutePath().normalize().toString();
+        }
+
+    }
+
     public int getSearchLimit() {
         return search.limit;
     }
@@ -76,6 +115,7 @@ public final class Properties {
         private String type;
         private String language;
         private int limit;
+        private String scope;
 
         private Search(String type, String language, int limit) {
             this.type = type;
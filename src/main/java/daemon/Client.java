@@ -0,0 +1,126 @@
+package daemon;
+
+import config.Configuration;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static java.lang.String.format;
+
+/**
+ * Forwards a single command to a running daemon.
+ */
+public final class Client {
+
+    private static final Logger logger = LogManager.getLogger(Client.class);
+
+    private final Endpoint endpoint;
+    private final Socket socket;
+
+    private Client(Endpoint endpoint, Socket socket) {
+        this.endpoint = endpoint;
+        this.socket = socket;
+    }
+
+    /**
+     * Connects to the daemon of the index, or returns {@code null} if none is running.
+     */
+    public static Client connect() {
+
+        if (Files.notExists(Configuration.Daemon.getEndpointPath())) {
+            return null;
+        }
+
+        try {
+            Endpoint endpoint = Endpoint.read(Configuration.Daemon.getEndpointPath());
+            Socket socket = new Socket();
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), endpoint.getPort()),
+                    Configuration.Daemon.getConnectMillis());
+
+            return new Client(endpoint, socket);
+        }
+        catch (IOException exception) {
+            logger.debug(format("Failed to connect to daemon, caused by: %s, reason: %s",
+                    exception.getClass(), exception.getMessage()));
+            return null;
+        }
+
+    }
+
+    /**
+     * Sends the command with the lines of the input, if any, and copies the response to the output,
+     * a command the daemon failed to execute is reported as an exception.
+     */
+    public void run(String command, String argument, BufferedReader input, PrintStream output) throws IOException {
+
+        long start = System.nanoTime();
+
+        try (socket;
+             BufferedReader response = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+
+            Writer request = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            request.write(endpoint.getToken());
+            request.write('\n');
+            request.write(argument == null ? command : format("%s %s", command, argument));
+            request.write('\n');
+            request.flush();
+
+            Thread sender = null;
+
+            if (input == null) {
+                socket.shutdownOutput();
+            } else {
+                sender = new Thread(() -> {
+                    try {
+                        input.transferTo(request);
+                        request.flush();
+                        socket.shutdownOutput();
+                    }
+                    catch (IOException exception) {
+                        logger.warn(format("Failed to send input to daemon, caused by: %s", exception.getClass()));
+                    }
+                }, "client-sender");
+                sender.setDaemon(true);
+                sender.start();
+            }
+
+            String previous = null;
+
+            for (String line = response.readLine(); line != null; line = response.readLine()) {
+                if (previous != null) {
+                    output.println(previous);
+                }
+                previous = line;
+            }
+
+            output.flush();
+
+            if (sender != null) {
+                sender.join();
+            }
+
+            if (previous == null) {
+                throw new IOException("Daemon closed the connection");
+            }
+
+            if (!previous.equals("ok")) {
+                throw new IOException(previous.startsWith("error: ") ? previous.substring(7) : previous);
+            }
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(exception.getMessage());
+        }
+
+        logger.debug(format("Forwarded: %s, took: %.1f ms", command, (System.nanoTime() - start) / 1e6));
+
+    }
+
+}
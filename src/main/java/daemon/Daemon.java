@@ -0,0 +1,365 @@
+package daemon;
+
+import config.Configuration;
+import config.Properties;
+import indexer.index.Index;
+import indexer.shelve.Shelve;
+import indexer.watch.IndexHandler;
+import indexer.watch.WatchDirectory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import searcher.Searches;
+import searcher.batch.Batch;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.String.format;
+
+/**
+ * Long running process owning the index writer, the directory watcher and a shared searcher, clients send
+ * one command per connection over a loopback socket.
+ *
+ * <p>A request is the secret, a command line and, for queries, one query per line until the client shuts
+ * its output down. The response is the command output followed by a single status line,
+ * either {@code ok} or {@code error: } and a reason.
+ */
+public final class Daemon implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(Daemon.class);
+
+    private static final int requestMillis = 10_000;
+
+    private final Index index;
+    private final Shelve shelve;
+    private final Searches searches;
+    private final Batch batch;
+
+    private final ServerSocket server;
+    private final ExecutorService clients;
+    private final Endpoint endpoint;
+    private final AtomicBoolean closed;
+
+    private WatchDirectory watch;
+    private Thread watcher;
+
+    public Daemon(Path path) throws IOException {
+
+        long start = System.nanoTime();
+
+        this.index = new Index(path, Configuration.Indexing.getWatchCommitPolicy());
+        this.shelve = new Shelve(path.resolve("directories"));
+
+        Properties properties = Batch.getUncolored(Properties.getDefault());
+        this.searches = new Searches(path, properties);
+        this.batch = new Batch(searches, properties);
+
+        this.server = new ServerSocket(Configuration.Daemon.getPort(), 50, InetAddress.getLoopbackAddress());
+
+        AtomicInteger threads = new AtomicInteger();
+        this.clients = Executors.newFixedThreadPool(Math.max(1, Configuration.Daemon.getWorkers()), runnable -> {
+            Thread thread = new Thread(runnable, format("daemon-client-%d", threads.getAndIncrement()));
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        byte[] secret = new byte[16];
+        new SecureRandom().nextBytes(secret);
+        StringBuilder token = new StringBuilder();
+        for (byte part : secret) {
+            token.append(format("%02x", part));
+        }
+
+        this.endpoint = new Endpoint(server.getLocalPort(), token.toString());
+        this.endpoint.write(Configuration.Daemon.getEndpointPath());
+        this.closed = new AtomicBoolean();
+
+        watch(null);
+
+        logger.info(format("Started daemon on port: %d, roots: %d, took: %d ms", server.getLocalPort(),
+                shelve.getRoots().size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+
+    }
+
+    /**
+     * Registers the root with the running watcher, or starts a new one over every monitored root,
+     * a watcher stops by itself once none of its directories is left and then refuses new ones.
+     */
+    private synchronized void watch(Path root) throws IOException {
+
+        if (watch != null && root != null && watch.registerAll(root)) {
+            return;
+        }
+
+        if (shelve.getRoots().isEmpty()) {
+            return;
+        }
+
+        watch = new WatchDirectory();
+
+        for (Shelve.Root monitored : shelve.getRoots()) {
+            watch.registerAll(Paths.get(monitored.getPath()));
+        }
+
+        WatchDirectory current = watch;
+        watcher = new Thread(() -> {
+            try {
+                current.run(new IndexHandler(current, index));
+            }
+            catch (IOException exception) {
+                logger.error(format("Failed to watch, caused by: %s, reason: %s",
+                        exception.getClass(), exception.getMessage()));
+            }
+        }, "daemon-watcher");
+        watcher.start();
+
+    }
+
+    /**
+     * Monitored directories are sent as absolute real paths.
+     */
+    private static Path getRoot(String argument) throws IOException {
+
+        if (argument == null || argument.isBlank()) {
+            throw new IOException("Missing directory");
+        }
+
+        Path root;
+
+        try {
+            root = Paths.get(argument);
+        }
+        catch (InvalidPathException exception) {
+            throw new IOException(format("Invalid path: %s", argument));
+        }
+
+        if (!root.isAbsolute()) {
+            throw new IOException(format("Not an absolute path: %s", argument));
+        }
+
+        return root.normalize();
+
+    }
+
+    private synchronized void add(Path root) throws IOException {
+
+        if (!Files.isDirectory(root, LinkOption.NOFOLLOW_LINKS)) {
+            throw new IOException(format("%s is not a directory, or does not exist", root));
+        }
+
+        if (shelve.contains(root.toString())) {
+            return;
+        }
+
+        int files = index.addDocuments(root);
+        index.commit();
+
+        shelve.add(root.toString());
+        shelve.update(root.toString(), files, System.currentTimeMillis());
+        watch(root);
+        searches.refresh();
+
+    }
+
+    private synchronized void remove(Path root) throws IOException {
+
+        if (!shelve.contains(root.toString())) {
+            throw new IOException(format("%s is not on the list", root));
+        }
+
+        if (watch != null) {
+            watch.unregisterAll(root);
+        }
+
+        index.deleteDocuments(root);
+        index.commit();
+        shelve.remove(root.toString());
+        searches.refresh();
+
+    }
+
+    private synchronized void refresh(boolean purge) throws IOException {
+
+        if (purge) {
+            index.purge();
+        }
+
+        for (Shelve.Root root : shelve.getRoots()) {
+            int files = purge ?
+                    index.addDocuments(Paths.get(root.getPath())) : index.refreshDocuments(Paths.get(root.getPath()));
+            shelve.update(root.getPath(), files, System.currentTimeMillis());
+        }
+
+        index.commit();
+        searches.refresh();
+
+    }
+
+    private synchronized void purge() throws IOException {
+        index.purge();
+        searches.refresh();
+    }
+
+    private void execute(String command, String argument, BufferedReader input, PrintStream output)
+            throws IOException {
+
+        switch (command) {
+            case "add" : add(getRoot(argument)); break;
+            case "rm" : remove(getRoot(argument)); break;
+            case "refresh" : refresh(false); break;
+            case "reindex" : refresh(true); break;
+            case "purge" : purge(); break;
+            case "list" :
+                for (Shelve.Root root : shelve.getRoots()) {
+                    output.println(root);
+                }
+                break;
+            case "queries" : batch.run(input, output); break;
+            case "stop" : stop(); break;
+            default :
+                throw new IOException(format("Unknown command: %s", command));
+        }
+
+    }
+
+    private void serve(Socket socket) {
+
+        long start = System.nanoTime();
+        String command = null;
+
+        try (socket;
+             BufferedReader input = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintStream output = new PrintStream(
+                     new BufferedOutputStream(socket.getOutputStream()), false, StandardCharsets.UTF_8)) {
+
+            socket.setSoTimeout(requestMillis);
+
+            String token = input.readLine();
+            String line = input.readLine();
+
+            if (token == null || line == null || !MessageDigest.isEqual(
+                    token.getBytes(StandardCharsets.UTF_8), endpoint.getToken().getBytes(StandardCharsets.UTF_8))) {
+                logger.warn(format("Rejected client: %s", socket.getRemoteSocketAddress()));
+                output.println("error: unauthorized");
+                return;
+            }
+
+            int space = line.indexOf(' ');
+            command = space < 0 ? line : line.substring(0, space);
+            String argument = space < 0 ? null : line.substring(space + 1);
+
+            socket.setSoTimeout(0);
+
+            try {
+                execute(command, argument, input, output);
+                output.println("ok");
+            }
+            catch (IOException | RuntimeException exception) {
+                logger.warn(format("Failed to execute: %s, caused by: %s, reason: %s",
+                        line, exception.getClass(), exception.getMessage()));
+                output.println(format("error: %s", exception.getMessage()));
+            }
+
+        }
+        catch (IOException exception) {
+            logger.warn(format("Failed to serve client, caused by: %s, reason: %s",
+                    exception.getClass(), exception.getMessage()));
+        }
+
+        logger.debug(format("Served: %s, took: %.1f ms", command, (System.nanoTime() - start) / 1e6));
+
+    }
+
+    private void stop() throws IOException {
+        logger.info("Stopping daemon");
+        server.close();
+    }
+
+    /**
+     * Accepts clients until the daemon is stopped, then closes it.
+     */
+    public void run() throws IOException {
+
+        try {
+            while (!server.isClosed()) {
+                Socket socket;
+
+                try {
+                    socket = server.accept();
+                }
+                catch (SocketException exception) {
+                    if (server.isClosed()) {
+                        break;
+                    }
+                    throw exception;
+                }
+
+                clients.execute(() -> serve(socket));
+            }
+        }
+        finally {
+            close();
+        }
+
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+
+        server.close();
+        clients.shutdown();
+
+        try {
+            clients.awaitTermination(1, TimeUnit.MINUTES);
+
+            Thread current;
+            synchronized (this) {
+                current = watcher;
+
+                if (watch != null) {
+                    watch.stop();
+                }
+            }
+
+            // the watcher still writes to the index until its loop has drained
+            if (current != null) {
+                current.join(TimeUnit.MINUTES.toMillis(1));
+            }
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+
+        Files.deleteIfExists(Configuration.Daemon.getEndpointPath());
+
+        batch.close();
+        searches.close();
+        shelve.close();
+        index.close();
+
+        logger.info("Stopped daemon");
+
+    }
+
+}
@@ -0,0 +1,66 @@
+package daemon;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+
+import static java.lang.String.format;
+
+/**
+ * Port and secret of a running daemon, written to a file only its owner can read, clients must present
+ * the secret before any command.
+ */
+final class Endpoint {
+
+    private final int port;
+    private final String token;
+
+    Endpoint(int port, String token) {
+        this.port = port;
+        this.token = token;
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    String getToken() {
+        return token;
+    }
+
+    static Endpoint read(Path location) throws IOException {
+
+        List<String> lines = Files.readAllLines(location, StandardCharsets.UTF_8);
+
+        if (lines.size() < 2) {
+            throw new IOException(format("Malformed daemon endpoint: %s", location));
+        }
+
+        try {
+            return new Endpoint(Integer.parseInt(lines.get(0).trim()), lines.get(1).trim());
+        }
+        catch (NumberFormatException exception) {
+            throw new IOException(format("Malformed daemon endpoint: %s", location), exception);
+        }
+
+    }
+
+    void write(Path location) throws IOException {
+
+        Path temporary = location.resolveSibling(location.getFileName() + ".tmp");
+        Files.deleteIfExists(temporary);
+
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(temporary, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(temporary);
+        }
+
+        Files.write(temporary, List.of(Integer.toString(port), token), StandardCharsets.UTF_8);
+        Files.move(temporary, location, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+    }
+
+}
@@ -0,0 +1,61 @@
+package indexer.index;
+
+import static java.lang.String.format;
+
+public final class CommitPolicy {
+
+    public static CommitPolicy durable() {
+        return new CommitPolicy(true, 1, 0, 0);
+    }
+
+    public static CommitPolicy grouped(int documents, long millis, double megabytes) {
+        return new CommitPolicy(false,
+                documents > 0 ? documents : Integer.MAX_VALUE,
+                Math.max(0, millis),
+                Math.max(0, megabytes));
+    }
+
+    private final boolean durable;
+    private final int documents;
+    private final long millis;
+    private final double megabytes;
+
+    private CommitPolicy(boolean durable, int documents, long millis, double megabytes) {
+        this.durable = durable;
+        this.documents = documents;
+        this.millis = millis;
+        this.megabytes = megabytes;
+    }
+
+    public boolean isDurable() {
+        return durable;
+    }
+
+    public int getDocuments() {
+        return documents;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    public double getMegabytes() {
+        return megabytes;
+    }
+
+    boolean isDue(int pending, long bytes) {
+        return durable || pending >= documents || (megabytes > 0 && bytes >= megabytes * 1024 * 1024);
+    }
+
+    @Override
+    public String toString() {
+        if (durable) {
+            return "durable";
+        }
+        return format("grouped, documents: %s, millis: %s, megabytes: %s",
+                documents == Integer.MAX_VALUE ? "unbounded" : documents,
+                millis > 0 ? millis : "unbounded",
+                megabytes > 0 ? megabytes : "unbounded");
+    }
+
+}
@@ -2,28 +2,39 @@ package indexer.index;
 
 import config.Configuration;
 import indexer.parse.Contents;
+import indexer.parse.ExtractionCache;
+import indexer.parse.Fingerprint;
 import indexer.parse.ParseException;
+import indexer.parse.Prefilter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.document.Field;
-import org.apache.lucene.document.StringField;
-import org.apache.lucene.document.TextField;
-import org.apache.lucene.index.IndexWriter;
-import org.apache.lucene.index.IndexWriterConfig;
-import org.apache.lucene.index.Term;
+import org.apache.lucene.document.*;
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.PrefixQuery;
-import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
 import org.apache.tika.exception.TikaException;
-import org.apache.tika.language.detect.LanguageResult;
 
 import java.io.IOException;
-import java.nio.file.*;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static java.lang.String.format;
@@ -33,9 +44,34 @@ public final class Index implements AutoCloseable {
 
     private static final Logger logger = LogManager.getLogger(Index.class);
 
-    private final IndexWriter writer;
+    private static final String hierarchyKey = "ancestors";
+    private static final String committedKey = "committed";
 
-    public Index(Path path, OpenMode mode) throws IOException {
+    private static final String failedField = "failed";
+
+    private static final FieldType offsetsType = new FieldType(TextField.TYPE_NOT_STORED);
+
+    static {
+        offsetsType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+        offsetsType.freeze();
+    }
+
+    private final IndexWriter writer;
+    private final CommitPolicy policy;
+    private final ExtractionCache cache;
+    private final Suggestions suggestions;
+    private final ScheduledExecutorService committer;
+
+    private final long opened;
+    private volatile boolean hierarchical;
+    private int pending;
+    private long pendingSince;
+    private long changes;
+    private long commits;
+    private long commitNanos;
+    private long commitNanosMax;
+
+    public Index(Path path, OpenMode mode, CommitPolicy policy) throws IOException {
 
         PerFieldAnalyzerWrapper fieldAnalyzerWrapper = new PerFieldAnalyzerWrapper(
                 new StandardAnalyzer(), Configuration.Languages.getAnalyzers().entrySet().stream()
@@ -46,116 +82,555 @@ public final class Index implements AutoCloseable {
         IndexWriterConfig indexWriterConfig = new IndexWriterConfig(fieldAnalyzerWrapper);
         indexWriterConfig.setOpenMode(mode);
 
+        if (policy.getMegabytes() > 0) {
+            indexWriterConfig.setRAMBufferSizeMB(Math.min(2048, Math.max(
+                    IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB, 2 * policy.getMegabytes())));
+        }
 
         this.writer = new IndexWriter(FSDirectory.open(path), indexWriterConfig);
+        this.policy = policy;
+        this.opened = System.nanoTime();
+        this.cache = Configuration.Indexing.getCacheBytes() > 0 ?
+                new ExtractionCache(path.resolve("extractions"), Configuration.Indexing.getCacheBytes()) : null;
+
+        for (Map.Entry<String, String> entry : Objects.requireNonNullElse(
+                writer.getLiveCommitData(), Map.<String, String>of().entrySet())) {
+            hierarchical |= hierarchyKey.equals(entry.getKey());
+        }
+
+        if (writer.getDocStats().maxDoc == 0) {
+            markHierarchical();
+        } else if (!hierarchical) {
+            logger.info(format("Index at: %s has no ancestor field, subtree deletes use prefix queries " +
+                    "until it is rebuilt with --reindex", path));
+        }
 
-        logger.debug(format("Opened index writer at: %s", path));
+        this.suggestions = Configuration.Indexing.isSuggesting() ? new Suggestions(path.resolve("suggest")) : null;
+
+        if (suggestions != null && mode == OpenMode.CREATE) {
+            suggestions.clear();
+        }
+
+        if (!policy.isDurable() && policy.getMillis() > 0) {
+            this.committer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "index-committer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.committer.scheduleWithFixedDelay(this::commitElapsed,
+                    policy.getMillis(), Math.max(1, policy.getMillis() / 2), TimeUnit.MILLISECONDS);
+        } else {
+            this.committer = null;
+        }
+
+        logger.debug(format("Opened index writer at: %s, commit policy: %s", path, policy));
+
+    }
+
+    public Index(Path path, OpenMode mode) throws IOException {
+        this(path, mode, Configuration.Indexing.getCommitPolicy());
+    }
 
+    public Index(Path path, CommitPolicy policy) throws IOException {
+        this(path, OpenMode.CREATE_OR_APPEND, policy);
     }
 
     public Index(Path path) throws IOException {
         this(path, OpenMode.CREATE_OR_APPEND);
     }
 
-    private Document getDocument(Path path, String contents, LanguageResult result) {
+    public synchronized void commit() throws IOException {
+
+        if (pending == 0 && !writer.hasUncommittedChanges()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        writer.setLiveCommitData(getCommitData(), false);
+        writer.commit();
+        long took = System.nanoTime() - start;
+
+        commits++;
+        commitNanos += took;
+        commitNanosMax = Math.max(commitNanosMax, took);
+
+        logger.debug(format("Committed: %d change(s), took: %.1f ms", pending, took / 1e6));
+        pending = 0;
+
+        if (suggestions != null) {
+            suggestions.schedule(writer);
+        }
+
+    }
+
+    private synchronized void commitElapsed() {
+
+        try {
+            if (pending > 0 && System.nanoTime() - pendingSince >= TimeUnit.MILLISECONDS.toNanos(policy.getMillis())) {
+                commit();
+            }
+        }
+        catch (IOException | RuntimeException exception) {
+            logger.error(format("Failed to commit, caused by: %s, reason: %s",
+                    exception.getClass(), exception.getMessage()));
+        }
+
+    }
+
+    private synchronized void changed(int count, boolean settled) throws IOException {
+
+        if (pending == 0) {
+            pendingSince = System.nanoTime();
+        }
+
+        pending += count;
+        changes += count;
+
+        if ((settled || !policy.isDurable()) && policy.isDue(pending, writer.ramBytesUsed())) {
+            commit();
+        }
+
+    }
+
+    private static Document getFingerprinted(Path path, Fingerprint fingerprint) {
 
         Document document = new Document();
 
         Field pathField = new StringField(
                 "real_path", path.toString(), Field.Store.YES);
+        Field pathValues = new BinaryDocValuesField(
+                "real_path", new BytesRef(path.toString()));
 
-        Field contentsField = new TextField(
-                format("contents_%s", result.getLanguage()),
-                contents.replaceAll("[\n\r]+", "\n"),
-                Field.Store.YES);
+        Field hashField = new StringField(
+                "hash", fingerprint.getHash(), Field.Store.YES);
+        Field hashValues = new BinaryDocValuesField(
+                "hash", new BytesRef(fingerprint.getHash()));
 
         document.add(pathField);
-        document.add(contentsField);
+        document.add(pathValues);
+        document.add(hashField);
+        document.add(hashValues);
+        document.add(new NumericDocValuesField("modified", fingerprint.getModified()));
+        document.add(new NumericDocValuesField("size", fingerprint.getSize()));
+
+        for (Path ancestor = path.getParent(); ancestor != null; ancestor = ancestor.getParent()) {
+            document.add(new StringField("ancestor", ancestor.toString(), Field.Store.NO));
+        }
+
+        return document;
+
+    }
+
+    /**
+     * Stands for a file that failed to parse, it has no contents nor name to match, only the fingerprint,
+     * so a refresh skips the file until it changes.
+     */
+    private static Document getTombstone(Path path, Fingerprint fingerprint) {
+
+        Document document = getFingerprinted(path, fingerprint);
+        document.add(new NumericDocValuesField(failedField, 1));
+        return document;
+
+    }
+
+    private static boolean isTombstone(Document document) {
+        return document.getField(failedField) != null;
+    }
+
+    private Document getDocument(Path path, Fingerprint fingerprint, Contents contents) {
+
+        Document document = getFingerprinted(path, fingerprint);
+
+        document.add(new StringField("name", path.getFileName().toString(), Field.Store.NO));
+
+        document.add(new StringField("language", contents.getLanguageResult().getLanguage(), Field.Store.NO));
+        document.add(new SortedDocValuesField("language", new BytesRef(contents.getLanguageResult().getLanguage())));
+
+        String contentsName = format("contents_%s", contents.getLanguageResult().getLanguage());
+
+        if (Configuration.Documents.isCompact()) {
+            document.add(Configuration.Documents.isStreaming() ?
+                    new Field(contentsName, contents.getReader(), offsetsType) :
+                    new Field(contentsName, contents.getContents(), offsetsType));
+            document.add(new StoredField(contentsName,
+                    contents.getPrefix(Configuration.Documents.getStoredLimit())));
+        } else if (Configuration.Documents.isStreaming()) {
+            document.add(new TextField(contentsName, contents.getReader()));
+            document.add(new StoredField(contentsName,
+                    contents.getPrefix(Configuration.Documents.getStoredLimit())));
+        } else {
+            document.add(new TextField(contentsName, contents.getContents(), Field.Store.YES));
+        }
 
         return document;
 
     }
 
-    public void addDocument(Path path) throws IOException {
+    private Document parseDocument(Path path, Fingerprint fingerprint) {
 
         try {
 
-            Contents contents = Contents.parse(path);
-            writer.addDocument(getDocument(path, contents.getContents(), contents.getLanguageResult()));
-            writer.commit();
-            logger.info(format("Added: %s, %s, %s", path, contents.getType(), contents.getLanguageResult()));
+            Contents contents = cache != null ? cache.get(fingerprint.getHash()) : null;
+
+            if (contents == null) {
+                contents = Contents.parse(path);
+
+                if (cache != null) {
+                    cache.put(fingerprint.getHash(), contents);
+                }
+            }
+
+            logger.debug(format("Parsed: %s, %s, %s, characters: %d%s", path, contents.getType(),
+                    contents.getLanguageResult(), contents.getLength(), contents.isTruncated() ? ", truncated" : ""));
+            return getDocument(path, fingerprint, contents);
 
         }
         catch (TikaException | ParseException exception) {
             logger.warn(format("Failed to parse: %s, caused by: %s, reason: %s",
                     path, exception.getClass(), exception.getMessage()));
+            return null;
         }
 
     }
 
-    public void addDocuments(Path path) throws IOException {
+    private Document parseDocument(Path path, BasicFileAttributes attributes) {
 
-        Files.walkFileTree(path, new SimpleFileVisitor<>() {
+        try {
+            return parseDocument(path, new Fingerprint(
+                    attributes.lastModifiedTime().toMillis(), attributes.size(), Fingerprint.hash(path)));
+        }
+        catch (IOException exception) {
+            logger.warn(format("Failed to access: %s, caused by: %s", path, exception.getClass()));
+            return null;
+        }
 
-            @Override
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+    }
 
-                if (Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) {
-                    addDocument(file);
-                }
-                return FileVisitResult.CONTINUE;
-            }
+    private Document parseDocument(Path path, Prefilter prefilter) {
 
-            @Override
-            public FileVisitResult visitFileFailed(Path file, IOException exception) {
+        if (prefilter.isRejected(path)) {
+            logger.debug(format("Rejected: %s", path));
+            return null;
+        }
 
-                if (Files.isRegularFile(file)) {
-                    logger.warn(format("Failed to access: %s, caused by: %s", file, exception.getClass()));
-                }
+        try {
+            return parseDocument(path, Files.readAttributes(
+                    path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+        }
+        catch (IOException exception) {
+            logger.warn(format("Failed to access: %s, caused by: %s", path, exception.getClass()));
+            return null;
+        }
 
-                return FileVisitResult.SKIP_SUBTREE;
+    }
+
+    public boolean addDocument(Path path) throws IOException {
+        return addDocument(path, Prefilter.global());
+    }
+
+    /**
+     * Adds the file unless the prefilter of the root it belongs to rejects it.
+     */
+    public boolean addDocument(Path path, Prefilter prefilter) throws IOException {
+
+        Document document = parseDocument(path, prefilter);
+
+        if (document != null) {
+            writer.addDocument(document);
+            changed(1, true);
+            logger.info(format("Added: %s", path));
+        }
+
+        return document != null;
+
+    }
+
+    /**
+     * Returns the number of added documents.
+     */
+    public int addDocuments(Path path) throws IOException {
+        return addDocuments(path, Prefilter.forRoot(path));
+    }
+
+    /**
+     * Returns the number of added documents, the path may lie beneath the root the prefilter was loaded for.
+     */
+    public int addDocuments(Path path, Prefilter prefilter) throws IOException {
+
+        if (Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)) {
+            return addDocument(path, prefilter) ? 1 : 0;
+        }
+
+        Pipeline pipeline = new Pipeline(
+                Configuration.Indexing.getParseWorkers(), Configuration.Indexing.getQueueCapacity(),
+                prefilter,
+                this::parseDocument,
+                (file, document) -> {
+                    writer.addDocument(document);
+                    changed(1, false);
+                    logger.info(format("Added: %s", file));
+                });
+
+        try {
+            return pipeline.run(path);
+        }
+        finally {
+            if (policy.isDurable()) {
+                commit();
             }
-        });
+        }
 
     }
 
     public void updateDocument(Path path) throws IOException {
+        updateDocument(path, Prefilter.global());
+    }
 
-        try {
+    public void updateDocument(Path path, Prefilter prefilter) throws IOException {
 
-            Contents contents = Contents.parse(path);
-            writer.updateDocument(new Term("real_path", path.toString()),
-                    getDocument(path, contents.getContents(), contents.getLanguageResult()));
-            writer.commit();
-            logger.info(format("Updated: %s, %s, %s", path, contents.getType(), contents.getLanguageResult()));
+        Document document = parseDocument(path, prefilter);
 
+        if (document != null) {
+            writer.updateDocument(new Term("real_path", path.toString()), document);
+            changed(1, true);
+            logger.info(format("Updated: %s", path));
         }
-        catch (TikaException | ParseException exception) {
-            logger.warn(format("Failed to parse: %s, caused by: %s, reason: %s",
-                    path, exception.getClass(), exception.getMessage()));
+
+    }
+
+    /**
+     * Fingerprints of the documents under the root, the paths of tombstones are added to the failures.
+     */
+    private Map<String, Fingerprint> getFingerprints(Path root, Set<String> failures) throws IOException {
+
+        Map<String, Fingerprint> fingerprints = new HashMap<>();
+        String prefix = root.toString() + root.getFileSystem().getSeparator();
+
+        try (DirectoryReader reader = DirectoryReader.open(writer)) {
+            for (LeafReaderContext leaf : reader.leaves()) {
+
+                Bits live = leaf.reader().getLiveDocs();
+                BinaryDocValues paths = DocValues.getBinary(leaf.reader(), "real_path");
+                BinaryDocValues hashes = DocValues.getBinary(leaf.reader(), "hash");
+                NumericDocValues modified = DocValues.getNumeric(leaf.reader(), "modified");
+                NumericDocValues sizes = DocValues.getNumeric(leaf.reader(), "size");
+                NumericDocValues failed = DocValues.getNumeric(leaf.reader(), failedField);
+
+                for (int doc = paths.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = paths.nextDoc()) {
+
+                    if (live != null && !live.get(doc)) {
+                        continue;
+                    }
+
+                    String path = paths.binaryValue().utf8ToString();
+
+                    if (!path.startsWith(prefix) && !path.equals(root.toString())) {
+                        continue;
+                    }
+
+                    if (hashes.advanceExact(doc) && modified.advanceExact(doc) && sizes.advanceExact(doc)) {
+                        fingerprints.put(path, new Fingerprint(
+                                modified.longValue(), sizes.longValue(), hashes.binaryValue().utf8ToString()));
+                    }
+
+                    if (failed.advanceExact(doc)) {
+                        failures.add(path);
+                    }
+                }
+            }
         }
 
+        return fingerprints;
+
     }
 
-    private void deleteDocuments(Query query) throws IOException {
-        writer.deleteDocuments(query);
-        writer.commit();
+    /**
+     * Returns the number of documents under the path after the refresh.
+     */
+    public int refreshDocuments(Path path) throws IOException {
+        return refreshDocuments(path, Prefilter.forRoot(path));
     }
 
+    public int refreshDocuments(Path path, Prefilter prefilter) throws IOException {
+
+        long start = System.nanoTime();
+
+        Set<String> failures = new HashSet<>();
+        Map<String, Fingerprint> fingerprints = getFingerprints(path, failures);
+        Set<String> visited = ConcurrentHashMap.newKeySet();
+        AtomicInteger unchanged = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicInteger refreshed = new AtomicInteger();
+
+        Pipeline pipeline = new Pipeline(
+                Configuration.Indexing.getParseWorkers(), Configuration.Indexing.getQueueCapacity(),
+                prefilter,
+                (file, attributes) -> {
+
+                    visited.add(file.toString());
+                    Fingerprint previous = fingerprints.get(file.toString());
+
+                    if (previous != null && !previous.isStale(attributes)) {
+                        (failures.contains(file.toString()) ? failed : unchanged).incrementAndGet();
+                        return null;
+                    }
+
+                    try {
+                        Fingerprint fingerprint = new Fingerprint(
+                                attributes.lastModifiedTime().toMillis(), attributes.size(), Fingerprint.hash(file));
+
+                        if (previous != null && previous.getHash().equals(fingerprint.getHash())) {
+                            logger.debug(format("Touched: %s, contents unchanged", file));
+                            writer.updateDocValues(new Term("real_path", file.toString()),
+                                    new NumericDocValuesField("modified", fingerprint.getModified()),
+                                    new NumericDocValuesField("size", fingerprint.getSize()));
+                            changed(1, false);
+                            (failures.contains(file.toString()) ? failed : unchanged).incrementAndGet();
+                            return null;
+                        }
+
+                        Document document = parseDocument(file, fingerprint);
+
+                        return document != null ? document : getTombstone(file, fingerprint);
+                    }
+                    catch (IOException exception) {
+                        logger.warn(format("Failed to access: %s, caused by: %s", file, exception.getClass()));
+                        return null;
+                    }
+                },
+                (file, document) -> {
+                    writer.updateDocument(new Term("real_path", file.toString()), document);
+                    changed(1, false);
+
+                    if (isTombstone(document)) {
+                        failed.incrementAndGet();
+                        logger.info(format("Failed: %s, skipped until it changes", file));
+                    } else {
+                        refreshed.incrementAndGet();
+                        logger.info(format("Refreshed: %s", file));
+                    }
+                });
+
+        try {
+            pipeline.run(path);
+
+            int vanished = 0;
+            for (String file : fingerprints.keySet()) {
+                if (!visited.contains(file)) {
+                    writer.deleteDocuments(new Term("real_path", file));
+                    changed(1, false);
+                    logger.info(format("Deleted: %s", file));
+                    vanished++;
+                }
+            }
+
+            logger.info(format("Refreshed: %s, unchanged: %d, reindexed: %d, failed: %d, deleted: %d, took: %d ms",
+                    path, unchanged.get(), refreshed.get(), failed.get(), vanished,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+
+            return unchanged.get() + refreshed.get();
+        }
+        finally {
+            if (policy.isDurable()) {
+                commit();
+            }
+        }
+
+    }
+
+    /**
+     * Deletes the document at the path and, if it is a directory, every document beneath it.
+     */
     public void deleteDocuments(Path path) throws IOException {
-        deleteDocuments(new PrefixQuery(new Term("real_path", path.toString())));
+
+        if (hierarchical) {
+            writer.deleteDocuments(new Term("real_path", path.toString()), new Term("ancestor", path.toString()));
+        } else {
+            writer.deleteDocuments(new TermQuery(new Term("real_path", path.toString())), new PrefixQuery(
+                    new Term("real_path", path.toString() + path.getFileSystem().getSeparator())));
+        }
+
+        changed(1, true);
         logger.info(format("Deleted document(s) from: %s", path));
+
+    }
+
+    /**
+     * Whether every document of the commit the reader was opened from carries the ancestor field,
+     * an index upgraded in place mixes documents with and without it until it is rebuilt.
+     */
+    public static boolean isHierarchical(DirectoryReader reader) throws IOException {
+        return reader.getIndexCommit().getUserData().containsKey(hierarchyKey);
+    }
+
+    /**
+     * Time the commit was made in milliseconds since the epoch, or {@code 0} if it does not say.
+     */
+    public static long getCommitted(IndexCommit commit) throws IOException {
+        String committed = commit.getUserData().get(committedKey);
+        return committed == null ? 0 : Long.parseLong(committed);
+    }
+
+    private Iterable<Map.Entry<String, String>> getCommitData() {
+        String committed = Long.toString(System.currentTimeMillis());
+        return (hierarchical ? Map.of(hierarchyKey, "true", committedKey, committed) :
+                Map.of(committedKey, committed)).entrySet();
+    }
+
+    private void markHierarchical() {
+        hierarchical = true;
+        writer.setLiveCommitData(getCommitData());
     }
 
     public void purge() throws IOException {
         writer.deleteAll();
-        writer.commit();
+        markHierarchical();
+
+        if (suggestions != null) {
+            suggestions.clear();
+        }
+
+        changed(1, true);
+        commit();
         logger.debug("Purged index writer");
     }
 
     @Override
     public void close() throws IOException {
-        writer.close();
-        logger.debug("Closed index writer");
+
+        if (committer != null) {
+            committer.shutdownNow();
+        }
+
+        synchronized (this) {
+
+            if (!writer.isOpen()) {
+                return;
+            }
+
+            commit();
+
+            if (suggestions != null) {
+                // closing would wait for the merges anyway, the suggestions still get to see their segments
+                if (writer.getConfig().getMergeScheduler() instanceof ConcurrentMergeScheduler) {
+                    ((ConcurrentMergeScheduler) writer.getConfig().getMergeScheduler()).sync();
+                }
+                commit();
+                suggestions.close();
+            }
+
+            writer.close();
+
+            double seconds = (System.nanoTime() - opened) / 1e9;
+            logger.info(format("Closed index writer, policy: %s, changes: %d, throughput: %.1f/s, " +
+                            "commits: %d, commit latency mean: %.1f ms, max: %.1f ms",
+                    policy, changes, changes / Math.max(seconds, 1e-9), commits,
+                    commits > 0 ? commitNanos / 1e6 / commits : 0.0, commitNanosMax / 1e6));
+
+            if (cache != null) {
+                logger.info(format("Extraction cache, %s", cache));
+            }
+        }
+
     }
 }
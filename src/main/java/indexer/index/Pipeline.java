@@ -0,0 +1,253 @@
+package indexer.index;
+
+import indexer.parse.Prefilter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.document.Document;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static java.lang.String.format;
+
+/**
+ * Walker thread, bounded queue, pool of parse workers, and the calling thread as the writer,
+ * a slow file only holds up the worker parsing it.
+ */
+final class Pipeline {
+
+    private static final Logger logger = LogManager.getLogger(Pipeline.class);
+
+    private static final Visited endOfPaths = new Visited(Paths.get(""), null);
+    private static final Parsed endOfDocuments = new Parsed(endOfPaths.path, null);
+
+    @FunctionalInterface
+    interface Stage {
+        /** Returns the document for a file, or null if the file should be skipped. */
+        Document parse(Path path, BasicFileAttributes attributes);
+    }
+
+    @FunctionalInterface
+    interface Sink {
+        void write(Path path, Document document) throws IOException;
+    }
+
+    private static final class Visited {
+
+        private final Path path;
+        private final BasicFileAttributes attributes;
+
+        private Visited(Path path, BasicFileAttributes attributes) {
+            this.path = path;
+            this.attributes = attributes;
+        }
+
+    }
+
+    private static final class Parsed {
+
+        private final Path path;
+        private final Document document;
+
+        private Parsed(Path path, Document document) {
+            this.path = path;
+            this.document = document;
+        }
+
+    }
+
+    private final int workers;
+    private final int capacity;
+    private final Prefilter prefilter;
+    private final Stage stage;
+    private final Sink sink;
+
+    private final AtomicInteger rejected;
+
+    Pipeline(int workers, int capacity, Prefilter prefilter, Stage stage, Sink sink) {
+        this.workers = Math.max(1, workers);
+        this.capacity = Math.max(1, capacity);
+        this.prefilter = prefilter;
+        this.stage = stage;
+        this.sink = sink;
+        this.rejected = new AtomicInteger();
+    }
+
+    /**
+     * Hands the element to the other side, returns false once nobody is left to take it.
+     */
+    private static <T> boolean offer(BlockingQueue<T> queue, T element, BooleanSupplier taken)
+            throws InterruptedException {
+
+        while (!queue.offer(element, 100, TimeUnit.MILLISECONDS)) {
+            if (!taken.getAsBoolean()) {
+                return false;
+            }
+        }
+
+        return true;
+
+    }
+
+    private void walk(Path root, BlockingQueue<Visited> paths, AtomicInteger alive)
+            throws IOException, InterruptedException {
+
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+
+                @Override
+                public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+
+                    if (!directory.equals(root) && prefilter.isIgnoredDirectory(directory)) {
+                        logger.debug(format("Pruned: %s", directory));
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+
+                    if (prefilter.isRejected(file, attributes)) {
+                        rejected.incrementAndGet();
+                    } else {
+                        try {
+                            if (!offer(paths, new Visited(file, attributes), () -> alive.get() > 0)) {
+                                throw new IOException(format("No parse worker is left, walking: %s", root));
+                            }
+                        }
+                        catch (InterruptedException exception) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException(format("Interrupted walking: %s", root));
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exception) {
+
+                    if (Files.isRegularFile(file)) {
+                        logger.warn(format("Failed to access: %s, caused by: %s", file, exception.getClass()));
+                    }
+
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+            });
+        }
+        finally {
+            for (int i = 0; i < workers; i++) {
+                if (!offer(paths, endOfPaths, () -> alive.get() > 0)) {
+                    break;
+                }
+            }
+        }
+
+    }
+
+    private void parse(BlockingQueue<Visited> paths, BlockingQueue<Parsed> documents, AtomicInteger alive,
+                       AtomicBoolean writing) throws InterruptedException {
+
+        try {
+            for (Visited visited = paths.take(); visited != endOfPaths; visited = paths.take()) {
+
+                Document document = stage.parse(visited.path, visited.attributes);
+
+                if (document != null && !offer(documents, new Parsed(visited.path, document), writing::get)) {
+                    return;
+                }
+            }
+        }
+        finally {
+            alive.decrementAndGet();
+            // an aborted run drains nothing anymore, and an interrupted offer has cleared the flag
+            offer(documents, endOfDocuments, writing::get);
+        }
+
+    }
+
+    int run(Path root) throws IOException {
+
+        BlockingQueue<Visited> paths = new ArrayBlockingQueue<>(capacity);
+        BlockingQueue<Parsed> documents = new ArrayBlockingQueue<>(capacity);
+
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(workers + 1, runnable -> {
+            Thread thread = new Thread(runnable, format("pipeline-%d", threads.getAndIncrement()));
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        AtomicInteger alive = new AtomicInteger(workers);
+        AtomicBoolean writing = new AtomicBoolean(true);
+
+        long start = System.nanoTime();
+        int written = 0;
+
+        try {
+            Future<?> walker = executor.submit(() -> {
+                walk(root, paths, alive);
+                return null;
+            });
+
+            List<Future<?>> parsers = new ArrayList<>(workers);
+            for (int i = 0; i < workers; i++) {
+                parsers.add(executor.submit(() -> {
+                    parse(paths, documents, alive, writing);
+                    return null;
+                }));
+            }
+
+            for (int remaining = workers; remaining > 0; ) {
+
+                Parsed parsed = documents.take();
+
+                if (parsed == endOfDocuments) {
+                    remaining--;
+                } else {
+                    sink.write(parsed.path, parsed.document);
+                    written++;
+                }
+            }
+
+            // a failed worker is the cause, the walker only stops because nobody takes its paths anymore
+            for (Future<?> parser : parsers) {
+                parser.get();
+            }
+            walker.get();
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(format("Interrupted indexing: %s", root));
+        }
+        catch (ExecutionException exception) {
+            if (exception.getCause() instanceof IOException) {
+                throw (IOException) exception.getCause();
+            }
+            if (exception.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) exception.getCause()).getCause();
+            }
+            throw new IOException(exception.getCause());
+        }
+        finally {
+            writing.set(false);
+            executor.shutdownNow();
+        }
+
+        logger.info(format("Indexed: %s, documents: %d, rejected: %d, workers: %d, took: %d ms",
+                root, written, rejected.get(), workers, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+
+        return written;
+
+    }
+
+}
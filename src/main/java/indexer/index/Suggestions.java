@@ -0,0 +1,447 @@
+package indexer.index;
+
+import config.Configuration;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.suggest.InputIterator;
+import org.apache.lucene.search.suggest.analyzing.AnalyzingInfixSuggester;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.lang.String.format;
+
+/**
+ * Per language autocomplete suggesters, kept in step with the index on a thread of their own by looking only
+ * at the segments flushed, merged, dropped or given new deletions since the previous update: indexed terms
+ * weighted by their document frequency and file names of the documents as titles.
+ */
+final class Suggestions implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(Suggestions.class);
+
+    private static final String syncedFile = "segments.synced";
+
+    private static final class Suggester extends AnalyzingInfixSuggester {
+
+        private boolean opening;
+
+        private Suggester(Path location) throws IOException {
+            super(FSDirectory.open(location), new StandardAnalyzer(), new StandardAnalyzer(),
+                    DEFAULT_MIN_PREFIX_CHARS, true, true, true, false);
+
+            // an empty build over the existing suggestions opens the writer, which then stays open
+            opening = true;
+            try {
+                build(InputIterator.EMPTY);
+            }
+            finally {
+                opening = false;
+            }
+        }
+
+        @Override
+        protected IndexWriterConfig getIndexWriterConfig(Analyzer analyzer, IndexWriterConfig.OpenMode mode) {
+            return super.getIndexWriterConfig(analyzer, opening ? IndexWriterConfig.OpenMode.CREATE_OR_APPEND : mode);
+        }
+
+        private IndexSearcher acquire() throws IOException {
+            synchronized (searcherMgrLock) {
+                return searcherMgr.acquire();
+            }
+        }
+
+        private void release(IndexSearcher searcher) throws IOException {
+            synchronized (searcherMgrLock) {
+                searcherMgr.release(searcher);
+            }
+        }
+
+        private boolean contains(IndexSearcher searcher, BytesRef text) throws IOException {
+            return isLive(searcher.getIndexReader(), new Term(EXACT_TEXT_FIELD_NAME, text));
+        }
+
+        private void remove(BytesRef text) throws IOException {
+            writer.deleteDocuments(new Term(EXACT_TEXT_FIELD_NAME, text));
+        }
+
+    }
+
+    private final Path location;
+    private final Map<String, Suggester> suggesters;
+    private final Map<String, Integer> synced;
+    private final ExecutorService updater;
+    private final AtomicBoolean scheduled;
+
+    private DirectoryReader previous;
+
+    Suggestions(Path location) throws IOException {
+
+        this.location = location;
+        this.suggesters = new HashMap<>();
+        this.synced = new HashMap<>();
+        this.scheduled = new AtomicBoolean();
+
+        for (String language : Configuration.Languages.getLanguages()) {
+            suggesters.put(language, new Suggester(location.resolve(language)));
+        }
+
+        Path file = location.resolve(syncedFile);
+
+        if (Files.isRegularFile(file)) {
+            for (String line : Files.readAllLines(file)) {
+                String[] fields = line.split(" ");
+                synced.put(fields[0], fields.length > 1 ? Integer.parseInt(fields[1]) : 0);
+            }
+        }
+
+        this.updater = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "index-suggestions");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        logger.debug(format("Opened suggestions at: %s, synced segments: %d", location, synced.size()));
+
+    }
+
+    private static boolean isWord(BytesRef term) {
+
+        String text = term.utf8ToString();
+
+        if (text.length() < 3 || text.length() > 40) {
+            return false;
+        }
+
+        return text.codePoints().allMatch(Character::isLetter);
+
+    }
+
+    private static SegmentReader getSegment(LeafReaderContext leaf) {
+        return (SegmentReader) leaf.reader();
+    }
+
+    private static boolean isMerged(SegmentReader segment) {
+        return "merge".equals(segment.getSegmentInfo().info.getDiagnostics().get("source"));
+    }
+
+    /**
+     * Whether any live document of the reader has the term, document frequencies still count deleted ones.
+     */
+    private static boolean isLive(IndexReader reader, Term term) throws IOException {
+
+        for (LeafReaderContext leaf : reader.leaves()) {
+
+            if (leaf.reader().docFreq(term) == 0) {
+                continue;
+            }
+
+            Bits live = leaf.reader().getLiveDocs();
+
+            if (live == null) {
+                return true;
+            }
+
+            PostingsEnum postings = leaf.reader().postings(term, PostingsEnum.NONE);
+
+            for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+                if (live.get(doc)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+
+    }
+
+    private static void collect(LeafReader reader, String field, boolean reweigh,
+                                Map<BytesRef, Boolean> terms) throws IOException {
+
+        Terms indexed = reader.terms(field);
+
+        if (indexed == null) {
+            return;
+        }
+
+        TermsEnum iterator = indexed.iterator();
+
+        for (BytesRef term = iterator.next(); term != null; term = iterator.next()) {
+            if (isWord(term)) {
+                terms.merge(BytesRef.deepCopyOf(term), reweigh, Boolean::logicalOr);
+            }
+        }
+
+    }
+
+    private static void collectTitles(LeafReader reader, boolean liveOnly, boolean reweigh,
+                                      Map<String, Map<BytesRef, Boolean>> titles) throws IOException {
+
+        Bits live = liveOnly ? reader.getLiveDocs() : null;
+        BinaryDocValues paths = DocValues.getBinary(reader, "real_path");
+        SortedDocValues languages = DocValues.getSorted(reader, "language");
+
+        for (int doc = paths.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = paths.nextDoc()) {
+
+            if (live != null && !live.get(doc) || !languages.advanceExact(doc)) {
+                continue;
+            }
+
+            Path name = Paths.get(paths.binaryValue().utf8ToString()).getFileName();
+
+            if (name != null) {
+                titles.computeIfAbsent(languages.binaryValue().utf8ToString(), language -> new HashMap<>())
+                        .merge(new BytesRef(name.toString()), reweigh, Boolean::logicalOr);
+            }
+        }
+
+    }
+
+    /**
+     * Upserts the candidates still found in live documents, when their weight may have changed or they are
+     * missing from the suggester, and removes the ones that are not, returns the number of updates and removals.
+     */
+    private static int[] apply(Suggester suggester, IndexReader current, String field,
+                               Map<BytesRef, Boolean> candidates) throws IOException {
+
+        int[] applied = new int[2];
+
+        if (candidates.isEmpty()) {
+            return applied;
+        }
+
+        IndexSearcher searcher = suggester.acquire();
+
+        try {
+            for (Map.Entry<BytesRef, Boolean> candidate : candidates.entrySet()) {
+
+                Term term = new Term(field, candidate.getKey());
+                boolean present = suggester.contains(searcher, candidate.getKey());
+
+                if (isLive(current, term)) {
+                    if (candidate.getValue() || !present) {
+                        suggester.update(candidate.getKey(), null, current.docFreq(term), null);
+                        applied[0]++;
+                    }
+                } else if (present) {
+                    suggester.remove(candidate.getKey());
+                    applied[1]++;
+                }
+            }
+        }
+        finally {
+            suggester.release(searcher);
+        }
+
+        return applied;
+
+    }
+
+    /**
+     * Queues an update against the current state of the writer, unless one is already waiting.
+     */
+    void schedule(IndexWriter writer) {
+
+        if (!scheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        updater.execute(() -> {
+            scheduled.set(false);
+            try {
+                update(writer);
+            }
+            catch (IOException | RuntimeException exception) {
+                logger.warn(format("Failed to update suggestions, caused by: %s, reason: %s",
+                        exception.getClass(), exception.getMessage()));
+            }
+        });
+
+    }
+
+    private synchronized void update(IndexWriter writer) throws IOException {
+
+        long start = System.nanoTime();
+        DirectoryReader current = previous == null ?
+                DirectoryReader.open(writer) : DirectoryReader.openIfChanged(previous, writer);
+
+        if (current == null) {
+            return;
+        }
+
+        Map<String, SegmentReader> segments = new HashMap<>();
+
+        for (LeafReaderContext leaf : current.leaves()) {
+            segments.put(getSegment(leaf).getSegmentName(), getSegment(leaf));
+        }
+
+        // without the readers of segments dropped while the process was down their terms are out of reach
+        if (previous == null && !segments.keySet().containsAll(synced.keySet())) {
+            logger.info(format("Rebuilding suggestions at: %s, synced segments are gone", location));
+            reset();
+        }
+
+        List<LeafReader> added = new ArrayList<>();
+        List<LeafReader> merged = new ArrayList<>();
+        List<LeafReader> deleted = new ArrayList<>();
+        List<LeafReader> removed = new ArrayList<>();
+
+        for (Map.Entry<String, SegmentReader> segment : segments.entrySet()) {
+
+            Integer known = synced.get(segment.getKey());
+
+            if (known == null) {
+                (isMerged(segment.getValue()) ? merged : added).add(segment.getValue());
+            } else if (segment.getValue().numDeletedDocs() > known) {
+                deleted.add(segment.getValue());
+            }
+        }
+
+        if (previous != null) {
+            for (LeafReaderContext leaf : previous.leaves()) {
+                if (!segments.containsKey(getSegment(leaf).getSegmentName())) {
+                    removed.add(leaf.reader());
+                }
+            }
+        }
+
+        int updates = 0;
+        int removals = 0;
+        Map<String, Map<BytesRef, Boolean>> titles = new HashMap<>();
+
+        for (LeafReader reader : added) {
+            collectTitles(reader, true, true, titles);
+        }
+
+        for (LeafReader reader : merged) {
+            collectTitles(reader, true, false, titles);
+        }
+
+        for (LeafReader reader : deleted) {
+            collectTitles(reader, false, false, titles);
+        }
+
+        for (LeafReader reader : removed) {
+            collectTitles(reader, false, false, titles);
+        }
+
+        for (Map.Entry<String, Suggester> entry : suggesters.entrySet()) {
+
+            String field = format("contents_%s", entry.getKey());
+            Suggester suggester = entry.getValue();
+
+            Map<BytesRef, Boolean> terms = new HashMap<>();
+            for (LeafReader reader : added) {
+                collect(reader, field, true, terms);
+            }
+            for (LeafReader reader : merged) {
+                collect(reader, field, false, terms);
+            }
+            for (LeafReader reader : deleted) {
+                collect(reader, field, false, terms);
+            }
+            for (LeafReader reader : removed) {
+                collect(reader, field, false, terms);
+            }
+
+            int[] applied = apply(suggester, current, field, terms);
+            int[] appliedTitles = apply(suggester, current, "name", titles.getOrDefault(entry.getKey(), Map.of()));
+
+            if (applied[0] + applied[1] + appliedTitles[0] + appliedTitles[1] > 0) {
+                suggester.commit();
+                suggester.refresh();
+            }
+
+            updates += applied[0] + appliedTitles[0];
+            removals += applied[1] + appliedTitles[1];
+        }
+
+        synced.clear();
+        segments.forEach((name, segment) -> synced.put(name, segment.numDeletedDocs()));
+
+        List<String> lines = new ArrayList<>();
+        synced.forEach((name, deletions) -> lines.add(format("%s %d", name, deletions)));
+
+        Path temporary = Files.createTempFile(location, syncedFile, ".tmp");
+        Files.write(temporary, lines);
+        Files.move(temporary, location.resolve(syncedFile),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        if (previous != null) {
+            previous.close();
+        }
+        previous = current;
+
+        logger.debug(format("Updated suggestions, segments added: %d, merged: %d, with deletions: %d, " +
+                        "removed: %d, updates: %d, removals: %d, took: %.1f ms", added.size(), merged.size(),
+                deleted.size(), removed.size(), updates, removals, (System.nanoTime() - start) / 1e6));
+
+    }
+
+    private void reset() throws IOException {
+
+        for (Suggester suggester : suggesters.values()) {
+            suggester.build(InputIterator.EMPTY);
+        }
+
+        synced.clear();
+        Files.deleteIfExists(location.resolve(syncedFile));
+
+    }
+
+    synchronized void clear() throws IOException {
+
+        reset();
+
+        if (previous != null) {
+            previous.close();
+            previous = null;
+        }
+
+    }
+
+    /**
+     * Waits for a queued update, the writer it reads from has to be open until this returns.
+     */
+    @Override
+    public void close() throws IOException {
+
+        updater.shutdown();
+
+        try {
+            updater.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+
+            if (previous != null) {
+                previous.close();
+            }
+
+            for (Suggester suggester : suggesters.values()) {
+                suggester.close();
+            }
+        }
+
+    }
+
+}
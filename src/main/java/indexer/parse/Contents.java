@@ -1,42 +1,68 @@
 package indexer.parse;
 
 import config.Configuration;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.apache.tika.Tika;
 import org.apache.tika.config.TikaConfig;
 import org.apache.tika.exception.TikaException;
 import org.apache.tika.io.TikaInputStream;
-import org.apache.tika.langdetect.OptimaizeLangDetector;
 import org.apache.tika.language.detect.LanguageResult;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.BodyContentHandler;
+import org.apache.tika.sax.WriteOutContentHandler;
 import org.xml.sax.SAXException;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.util.Objects;
 
+import static java.lang.String.format;
+
 public class Contents {
 
-    private static final OptimaizeLangDetector detector;
-    private static final Tika tika;
+    private static final Logger logger = LogManager.getLogger(Contents.class);
 
-    static {
-        try {
-            tika = new Tika(new TikaConfig(
-                    Objects.requireNonNull(
-                            ClassLoader.getSystemClassLoader()
-                                    .getResource("tika-config.xml"))
-            ));
+    /**
+     * Tika and the language detectors are loaded on the first parse, restoring cached contents
+     * or merely referencing this class does not pay for them.
+     */
+    private static final class Parsers {
 
-            detector = new OptimaizeLangDetector();
-            detector.loadModels(Configuration.Languages.getLanguages());
-        }
-        catch (IOException | TikaException | SAXException exception) {
-            throw new RuntimeException(exception);
+        private static final DetectorPool detectors;
+        private static final Tika tika;
+
+        static {
+            try {
+                long start = System.nanoTime();
+
+                tika = new Tika(new TikaConfig(
+                        Objects.requireNonNull(
+                                ClassLoader.getSystemClassLoader()
+                                        .getResource("tika-config.xml"))
+                ));
+
+                detectors = new DetectorPool(Configuration.Languages.getLanguages(),
+                        Configuration.Indexing.getParseWorkers() + Configuration.Watching.getDispatchWorkers(),
+                        Configuration.Languages.getDetectionSample());
+
+                logger.debug(format("Loaded parsers, took: %d ms", (System.nanoTime() - start) / 1_000_000));
+            }
+            catch (IOException | TikaException | SAXException exception) {
+                throw new RuntimeException(exception);
+            }
         }
+
     }
 
     public static Contents parse(Path path) throws ParseException, TikaException {
 
+        Tika tika = Parsers.tika;
+
         try (TikaInputStream stream = TikaInputStream.get(path)) {
 
             String type = tika.detect(stream);
@@ -45,15 +71,28 @@ public class Contents {
                 throw new ParseException("Type not supported");
             }
 
-            String contents = tika.parseToString(stream);
+            TextBuffer contents = new TextBuffer(Configuration.Documents.getCharacterLimit());
+            WriteOutContentHandler handler = new WriteOutContentHandler(
+                    contents, Configuration.Documents.getCharacterLimit());
+
+            ParseContext context = new ParseContext();
+            context.set(Parser.class, tika.getParser());
+
+            try {
+                tika.getParser().parse(stream, new BodyContentHandler(handler), new Metadata(), context);
+            }
+            catch (SAXException exception) {
+                if (!handler.isWriteLimitReached(exception)) {
+                    throw new TikaException("Unexpected SAX processing failure", exception);
+                }
+                contents.truncate();
+            }
 
             if (contents.isBlank()) {
                 throw new ParseException("Contents are blank");
             }
 
-            detector.addText(contents);
-            LanguageResult result = detector.detect();
-            detector.reset();
+            LanguageResult result = Parsers.detectors.detect(contents.getCharacters(), contents.length());
 
             if (result.isUnknown()) {
                 throw new ParseException("Language is unknown");
@@ -64,14 +103,22 @@ public class Contents {
         catch (IOException | UncheckedIOException exception) {
             throw new ParseException(exception);
         }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new ParseException(exception);
+        }
 
     }
 
+    static Contents restore(String type, TextBuffer contents, LanguageResult result) {
+        return new Contents(type, contents, result);
+    }
+
     private final String type;
-    private final String contents;
+    private final TextBuffer contents;
     private final LanguageResult result;
 
-    private Contents(String type, String contents, LanguageResult result) {
+    private Contents(String type, TextBuffer contents, LanguageResult result) {
         this.type = type;
         this.contents = contents;
         this.result = result;
@@ -82,7 +129,23 @@ public class Contents {
     }
 
     public String getContents() {
-        return contents;
+        return contents.toString();
+    }
+
+    public Reader getReader() {
+        return contents.getReader();
+    }
+
+    public String getPrefix(int length) {
+        return contents.getPrefix(length);
+    }
+
+    public int getLength() {
+        return contents.length();
+    }
+
+    public boolean isTruncated() {
+        return contents.isTruncated();
     }
 
     public LanguageResult getLanguageResult() {
@@ -0,0 +1,92 @@
+package indexer.parse;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.tika.langdetect.OptimaizeLangDetector;
+import org.apache.tika.language.detect.LanguageResult;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.String.format;
+
+/**
+ * Bounded pool of language detectors, each detection borrows one and looks only at a sample
+ * taken from the beginning and the middle of the text.
+ */
+final class DetectorPool {
+
+    private static final Logger logger = LogManager.getLogger(DetectorPool.class);
+
+    private static final char[] separator = { ' ', '\n' };
+
+    private final Set<String> languages;
+    private final int size;
+    private final int sample;
+
+    private final BlockingQueue<OptimaizeLangDetector> idle;
+    private final AtomicInteger created;
+
+    DetectorPool(Set<String> languages, int size, int sample) {
+        this.languages = languages;
+        this.size = Math.max(1, size);
+        this.sample = Math.max(1, sample);
+        this.idle = new LinkedBlockingQueue<>();
+        this.created = new AtomicInteger();
+    }
+
+    private OptimaizeLangDetector borrow() throws InterruptedException {
+
+        OptimaizeLangDetector detector = idle.poll();
+
+        if (detector != null) {
+            return detector;
+        }
+
+        int index = created.getAndIncrement();
+
+        if (index < size) {
+            try {
+                detector = new OptimaizeLangDetector();
+                detector.loadModels(languages);
+                logger.debug(format("Created language detector: %d of %d", index + 1, size));
+                return detector;
+            }
+            catch (IOException exception) {
+                created.decrementAndGet();
+                throw new UncheckedIOException(exception);
+            }
+        }
+
+        created.decrementAndGet();
+        return idle.take();
+
+    }
+
+    LanguageResult detect(char[] characters, int length) throws InterruptedException {
+
+        OptimaizeLangDetector detector = borrow();
+
+        try {
+            if (length <= 2 * sample) {
+                detector.addText(characters, 0, length);
+            } else {
+                detector.addText(characters, 0, sample);
+                detector.addText(separator, 0, separator.length);
+                detector.addText(characters, (length - sample) / 2, sample);
+            }
+
+            return detector.detect();
+        }
+        finally {
+            detector.reset();
+            idle.add(detector);
+        }
+
+    }
+
+}
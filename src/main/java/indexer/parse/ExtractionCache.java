@@ -0,0 +1,260 @@
+package indexer.parse;
+
+import config.Configuration;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.tika.language.detect.LanguageConfidence;
+import org.apache.tika.language.detect.LanguageResult;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static java.lang.String.format;
+
+/**
+ * Extracted contents stored on disk by content hash, the least recently used entries
+ * are evicted once the cache grows over its capacity. Every entry records the extraction limits
+ * it was made under, an entry made under other limits is a miss.
+ */
+public final class ExtractionCache {
+
+    private static final Logger logger = LogManager.getLogger(ExtractionCache.class);
+
+    private final Path location;
+    private final long capacity;
+    private final String settings;
+
+    private final LinkedHashMap<String, Long> entries;
+    private boolean loaded;
+    private long size;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public ExtractionCache(Path location, long capacity) {
+        this.location = location;
+        this.capacity = capacity;
+        this.settings = format("chars: %d, sample: %d",
+                Configuration.Documents.getCharacterLimit(), Configuration.Languages.getDetectionSample());
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Scans the entries on first use, commands that never parse a document do not walk the cache.
+     */
+    private synchronized void load() throws IOException {
+
+        if (loaded) {
+            return;
+        }
+
+        loaded = true;
+        long start = System.nanoTime();
+
+        Files.createDirectories(location);
+
+        try (Stream<Path> files = Files.walk(location, 2)) {
+            files.filter(Files::isRegularFile)
+                    .sorted(Comparator.comparing(file -> file.toFile().lastModified()))
+                    .forEach(file -> {
+                        if (file.getFileName().toString().endsWith(".tmp")) {
+                            file.toFile().delete();
+                        } else {
+                            long length = file.toFile().length();
+                            entries.put(file.getFileName().toString(), length);
+                            size += length;
+                        }
+                    });
+        }
+
+        evict();
+
+        logger.debug(format("Opened extraction cache at: %s, entries: %d, size: %d of %d bytes, took: %d ms",
+                location, entries.size(), size, capacity, (System.nanoTime() - start) / 1_000_000));
+
+    }
+
+    private Path locate(String hash) {
+        return location.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    /**
+     * Reads an entry, or returns null if it was extracted under other limits.
+     */
+    private Contents read(Path file) throws IOException {
+
+        try (DataInputStream stream = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file))))) {
+
+            if (!stream.readUTF().equals(settings)) {
+                return null;
+            }
+
+            String type = stream.readUTF();
+            LanguageResult result = new LanguageResult(
+                    stream.readUTF(), LanguageConfidence.valueOf(stream.readUTF()), stream.readFloat());
+            boolean truncated = stream.readBoolean();
+
+            TextBuffer contents = new TextBuffer(stream.readInt());
+            Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8);
+            char[] buffer = new char[8 * 1024];
+
+            for (int read = reader.read(buffer); read != -1; read = reader.read(buffer)) {
+                contents.write(buffer, 0, read);
+            }
+
+            if (truncated) {
+                contents.truncate();
+            }
+
+            return Contents.restore(type, contents, result);
+        }
+
+    }
+
+    public Contents get(String hash) {
+
+        synchronized (this) {
+            try {
+                load();
+            }
+            catch (IOException exception) {
+                logger.warn(format("Failed to open extraction cache: %s, caused by: %s",
+                        location, exception.getClass()));
+            }
+
+            if (entries.get(hash) == null) {
+                misses++;
+                return null;
+            }
+        }
+
+        Path file = locate(hash);
+
+        try {
+            Contents contents = read(file);
+
+            if (contents != null) {
+                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+
+                synchronized (this) {
+                    hits++;
+                }
+
+                return contents;
+            }
+
+            logger.debug(format("Dropped cached extraction: %s, extracted under other limits", file));
+        }
+        catch (IOException | IllegalArgumentException exception) {
+            logger.warn(format("Failed to read cached extraction: %s, caused by: %s", file, exception.getClass()));
+        }
+
+        remove(hash);
+
+        synchronized (this) {
+            misses++;
+        }
+
+        return null;
+
+    }
+
+    public void put(String hash, Contents contents) {
+
+        Path file = locate(hash);
+
+        try {
+            load();
+            Files.createDirectories(file.getParent());
+            Path temporary = Files.createTempFile(file.getParent(), hash, ".tmp");
+
+            try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(Files.newOutputStream(temporary))))) {
+
+                stream.writeUTF(settings);
+                stream.writeUTF(contents.getType());
+                stream.writeUTF(contents.getLanguageResult().getLanguage());
+                stream.writeUTF(contents.getLanguageResult().getConfidence().name());
+                stream.writeFloat(contents.getLanguageResult().getRawScore());
+                stream.writeBoolean(contents.isTruncated());
+                stream.writeInt(Math.max(1, contents.getLength()));
+
+                Writer writer = new OutputStreamWriter(stream, StandardCharsets.UTF_8);
+                try (Reader reader = contents.getReader()) {
+                    reader.transferTo(writer);
+                }
+                writer.flush();
+            }
+
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            synchronized (this) {
+                Long previous = entries.put(hash, Files.size(file));
+                size += entries.get(hash) - (previous == null ? 0 : previous);
+                evict();
+            }
+
+        }
+        catch (IOException exception) {
+            logger.warn(format("Failed to cache extraction: %s, caused by: %s", file, exception.getClass()));
+        }
+
+    }
+
+    private synchronized void remove(String hash) {
+
+        Long length = entries.remove(hash);
+
+        if (length != null) {
+            size -= length;
+        }
+
+        try {
+            Files.deleteIfExists(locate(hash));
+        }
+        catch (IOException exception) {
+            logger.warn(format("Failed to evict cached extraction: %s, caused by: %s", hash, exception.getClass()));
+        }
+
+    }
+
+    private synchronized void evict() {
+
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+
+        while (size > capacity && iterator.hasNext()) {
+
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            size -= eldest.getValue();
+            evictions++;
+
+            try {
+                Files.deleteIfExists(locate(eldest.getKey()));
+            }
+            catch (IOException exception) {
+                logger.warn(format("Failed to evict cached extraction: %s, caused by: %s",
+                        eldest.getKey(), exception.getClass()));
+            }
+        }
+
+    }
+
+    @Override
+    public synchronized String toString() {
+        return format("entries: %d, size: %d bytes, hits: %d, misses: %d, evictions: %d",
+                entries.size(), size, hits, misses, evictions);
+    }
+
+}
@@ -0,0 +1,79 @@
+package indexer.parse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static java.lang.String.format;
+
+public final class Fingerprint {
+
+    private static final char[] hexDigits = "0123456789abcdef".toCharArray();
+
+    public static String hash(Path path) throws IOException {
+
+        MessageDigest digest;
+
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException(exception);
+        }
+
+        byte[] buffer = new byte[64 * 1024];
+
+        try (InputStream stream = Files.newInputStream(path)) {
+            for (int read = stream.read(buffer); read != -1; read = stream.read(buffer)) {
+                digest.update(buffer, 0, read);
+            }
+        }
+
+        byte[] bytes = digest.digest();
+        char[] characters = new char[2 * bytes.length];
+
+        for (int i = 0; i < bytes.length; i++) {
+            characters[2 * i] = hexDigits[(bytes[i] >> 4) & 0xf];
+            characters[2 * i + 1] = hexDigits[bytes[i] & 0xf];
+        }
+
+        return new String(characters);
+
+    }
+
+    private final long modified;
+    private final long size;
+    private final String hash;
+
+    public Fingerprint(long modified, long size, String hash) {
+        this.modified = modified;
+        this.size = size;
+        this.hash = hash;
+    }
+
+    public long getModified() {
+        return modified;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public boolean isStale(BasicFileAttributes attributes) {
+        return modified != attributes.lastModifiedTime().toMillis() || size != attributes.size();
+    }
+
+    @Override
+    public String toString() {
+        return format("modified: %d, size: %d, hash: %s", modified, size, hash);
+    }
+
+}
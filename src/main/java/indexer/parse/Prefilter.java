@@ -0,0 +1,180 @@
+package indexer.parse;
+
+import config.Configuration;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static java.lang.String.format;
+
+/**
+ * Rejects files that can not be indexed before Tika opens them, by ignore globs, extension and magic bytes.
+ */
+public final class Prefilter {
+
+    private static final Logger logger = LogManager.getLogger(Prefilter.class);
+
+    private static final String ignoreFile = ".indexignore";
+
+    private static final int sniffLength = 512;
+
+    private static final List<byte[]> documentMagics = List.of(
+            "%PDF".getBytes(StandardCharsets.US_ASCII),
+            "{\\rtf".getBytes(StandardCharsets.US_ASCII),
+            new byte[] { 'P', 'K', 3, 4 }
+    );
+
+    private static final Prefilter global = new Prefilter(null, List.of());
+
+    public static Prefilter global() {
+        return global;
+    }
+
+    public static Prefilter forRoot(Path root) {
+
+        List<String> patterns = new ArrayList<>();
+        Path location = root.resolve(ignoreFile);
+
+        if (Files.isRegularFile(location)) {
+            try {
+                Files.readAllLines(location).stream()
+                        .map(String::trim)
+                        .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                        .forEach(patterns::add);
+
+                logger.debug(format("Loaded ignore patterns for: %s, %s", root, patterns));
+            }
+            catch (IOException exception) {
+                logger.warn(format("Failed to read: %s, caused by: %s", location, exception.getClass()));
+            }
+        }
+
+        return new Prefilter(root, patterns);
+
+    }
+
+    private final Path root;
+    private final List<PathMatcher> nameMatchers;
+    private final List<PathMatcher> pathMatchers;
+
+    private Prefilter(Path root, List<String> patterns) {
+
+        this.root = root;
+        this.nameMatchers = new ArrayList<>();
+        this.pathMatchers = new ArrayList<>();
+
+        List<String> all = new ArrayList<>(Configuration.Documents.getIgnoredPatterns());
+        all.add(ignoreFile);
+        all.addAll(patterns);
+
+        for (String pattern : all) {
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher(format("glob:%s", pattern));
+            (pattern.contains("/") ? pathMatchers : nameMatchers).add(matcher);
+        }
+
+    }
+
+    private boolean isIgnored(Path path) {
+
+        Path name = path.getFileName();
+
+        if (name != null && nameMatchers.stream().anyMatch(matcher -> matcher.matches(name))) {
+            return true;
+        }
+
+        if (root != null && path.startsWith(root) && !path.equals(root)) {
+            Path relative = root.relativize(path);
+            return pathMatchers.stream().anyMatch(matcher -> matcher.matches(relative));
+        }
+
+        return false;
+
+    }
+
+    public boolean isIgnoredDirectory(Path directory) {
+        return isIgnored(directory);
+    }
+
+    private static String getExtension(Path path) {
+
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+
+    }
+
+    private static boolean isBinary(Path file) {
+
+        byte[] head = new byte[sniffLength];
+        int length;
+
+        try (InputStream stream = Files.newInputStream(file)) {
+            length = stream.readNBytes(head, 0, sniffLength);
+        }
+        catch (IOException exception) {
+            return true;
+        }
+
+        for (byte[] magic : documentMagics) {
+            if (length >= magic.length && Arrays.equals(head, 0, magic.length, magic, 0, magic.length)) {
+                return false;
+            }
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (head[i] == 0) {
+                return true;
+            }
+        }
+
+        return false;
+
+    }
+
+    public boolean isRejected(Path file, BasicFileAttributes attributes) {
+
+        if (!attributes.isRegularFile() || attributes.size() == 0 || isIgnored(file)) {
+            return true;
+        }
+
+        String extension = getExtension(file);
+
+        if (Configuration.Documents.isRejectedExtension(extension)) {
+            return true;
+        }
+
+        return !Configuration.Documents.isDocumentExtension(extension) && isBinary(file);
+
+    }
+
+    public boolean isRejected(Path file) {
+
+        for (Path parent = file.getParent(); parent != null && !parent.equals(root); parent = parent.getParent()) {
+            if (isIgnored(parent)) {
+                return true;
+            }
+        }
+
+        try {
+            return isRejected(file, Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+        }
+        catch (IOException exception) {
+            return true;
+        }
+
+    }
+
+}
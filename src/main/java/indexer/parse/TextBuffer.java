@@ -0,0 +1,105 @@
+package indexer.parse;
+
+import java.io.CharArrayReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Writer collecting extracted text up to a fixed number of characters,
+ * runs of line breaks are collapsed into a single new line while writing.
+ */
+final class TextBuffer extends Writer {
+
+    private final int capacity;
+
+    private char[] characters;
+    private int length;
+    private boolean newline;
+    private boolean blank;
+    private boolean truncated;
+
+    TextBuffer(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.characters = new char[Math.min(this.capacity, 8 * 1024)];
+        this.blank = true;
+    }
+
+    private void put(char character) {
+
+        if (length == capacity) {
+            truncated = true;
+            return;
+        }
+
+        if (length == characters.length) {
+            characters = Arrays.copyOf(characters, (int) Math.min(capacity, 2L * characters.length));
+        }
+
+        characters[length++] = character;
+
+    }
+
+    @Override
+    public void write(char[] buffer, int offset, int count) {
+
+        for (int i = offset; i < offset + count && !truncated; i++) {
+
+            char character = buffer[i];
+
+            if (character == '\n' || character == '\r') {
+                if (!newline) {
+                    put('\n');
+                    newline = true;
+                }
+            } else {
+                put(character);
+                newline = false;
+                blank &= Character.isWhitespace(character);
+            }
+        }
+
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    boolean isBlank() {
+        return blank;
+    }
+
+    void truncate() {
+        truncated = true;
+    }
+
+    boolean isTruncated() {
+        return truncated;
+    }
+
+    int length() {
+        return length;
+    }
+
+    char[] getCharacters() {
+        return characters;
+    }
+
+    Reader getReader() {
+        return new CharArrayReader(characters, 0, length);
+    }
+
+    String getPrefix(int count) {
+        return new String(characters, 0, Math.min(length, Math.max(0, count)));
+    }
+
+    @Override
+    public String toString() {
+        return new String(characters, 0, length);
+    }
+
+}
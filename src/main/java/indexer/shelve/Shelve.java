@@ -1,54 +1,424 @@
 package indexer.shelve;
 
+import config.Configuration;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.util.IOUtils;
+
 import java.io.*;
-import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Collection;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import static java.lang.String.format;
+
+/**
+ * Monitored directories with their metadata, kept as a snapshot and a log of checksummed records appended
+ * on every change. The log is folded into a new snapshot in the background once it grows, snapshots replace
+ * the previous one by an atomic rename, a torn record at the end of the log is dropped on open. The log is
+ * locked for the lifetime of the shelve, so only one process at a time reads and writes it.
+ */
+public final class Shelve implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(Shelve.class);
+
+    private static final int snapshotMagic = 0x53484c56;
+
+    private static final byte putRecord = 1;
+    private static final byte removeRecord = 2;
+
+    public static final class Root {
+
+        private final String path;
+        private final int files;
+        private final long scanned;
+
+        private Root(String path, int files, long scanned) {
+            this.path = path;
+            this.files = files;
+            this.scanned = scanned;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Number of indexed files under this root as of the last scan, or {@code -1} if unknown.
+         */
+        public int getFiles() {
+            return files;
+        }
+
+        /**
+         * Time of the last scan in milliseconds since the epoch, or {@code 0} if never scanned.
+         */
+        public long getScanned() {
+            return scanned;
+        }
+
+        @Override
+        public String toString() {
+            return scanned > 0 ?
+                    format("%s, files: %d, scanned: %s", path, files, Instant.ofEpochMilli(scanned)) : path;
+        }
+
+    }
+
+    private final Path snapshot;
+    private final Path log;
+    private final FileChannel channel;
+    private final FileLock lock;
+    private final ExecutorService compactor;
+
+    private final LinkedHashMap<String, Root> roots;
+    private int records;
+    private boolean compacting;
+
+    public Shelve(Path location) throws IOException {
+
+        this.snapshot = location.resolveSibling(location.getFileName() + ".snapshot");
+        this.log = location.resolveSibling(location.getFileName() + ".log");
+        this.roots = new LinkedHashMap<>();
+
+        this.channel = FileChannel.open(log,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.lock = lock(channel, log);
+
+        try {
+            Files.deleteIfExists(snapshot.resolveSibling(snapshot.getFileName() + ".tmp"));
+
+            if (Files.exists(snapshot)) {
+                readSnapshot();
+            }
+
+            readLog();
+        }
+        catch (IOException | RuntimeException exception) {
+            channel.close();
+            throw exception;
+        }
+
+        this.compactor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "shelve-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Path legacy = location.resolveSibling(location.getFileName() + ".shelve");
+
+        if (Files.exists(legacy)) {
+            migrate(legacy);
+        }
+
+        logger.debug(format("Opened shelve at: %s, roots: %d, log records: %d", location, roots.size(), records));
+
+    }
+
+    private static FileLock lock(FileChannel channel, Path log) throws IOException {
+
+        FileLock lock;
+
+        try {
+            lock = channel.tryLock();
+        }
+        catch (OverlappingFileLockException exception) {
+            lock = null;
+        }
+
+        if (lock == null) {
+            channel.close();
+            throw new IOException(format("Shelve is in use by another process: %s", log));
+        }
+
+        return lock;
+
+    }
+
+    private void apply(DataInput input) throws IOException {
+
+        byte type = input.readByte();
+        String path = input.readUTF();
+
+        switch (type) {
+            case putRecord :
+                roots.put(path, new Root(path, input.readInt(), input.readLong()));
+                break;
+            case removeRecord :
+                roots.remove(path);
+                break;
+            default :
+                throw new IOException(format("Unknown record type: %d", type));
+        }
+
+    }
+
+    private void readSnapshot() throws IOException {
+
+        try (DataInputStream stream = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+
+            if (stream.readInt() != snapshotMagic) {
+                throw new IOException(format("Not a shelve snapshot: %s", snapshot));
+            }
+
+            for (int count = stream.readInt(); count > 0; count--) {
+                apply(stream);
+            }
+        }
+
+    }
+
+    private void readLog() throws IOException {
+
+        ByteBuffer contents = ByteBuffer.allocate((int) channel.size());
+
+        while (contents.hasRemaining()) {
+            if (channel.read(contents) == -1) {
+                break;
+            }
+        }
+
+        contents.flip();
+
+        long valid = 0;
+
+        while (contents.remaining() >= Integer.BYTES) {
+
+            int length = contents.getInt();
+
+            if (length <= 0 || contents.remaining() < length + Integer.BYTES) {
+                break;
+            }
+
+            byte[] payload = new byte[length];
+            contents.get(payload);
+
+            CRC32 checksum = new CRC32();
+            checksum.update(payload);
+
+            if ((int) checksum.getValue() != contents.getInt()) {
+                break;
+            }
 
-public class Shelve<E extends Serializable> implements AutoCloseable {
+            apply(new DataInputStream(new ByteArrayInputStream(payload)));
+            valid = contents.position();
+            records++;
+        }
 
-    private Collection<E> shelf;
-    private Path location;
+        if (valid < channel.size() && !isTail(contents, (int) valid)) {
+            throw new IOException(format("Damaged shelve log record at: %s, offset: %d, followed by %d bytes",
+                    log, valid, channel.size() - valid));
+        }
 
-    @SuppressWarnings("unchecked")
-    public Shelve(Path location, Class<? extends Collection> clazz) throws IOException {
+        if (valid < channel.size()) {
+            logger.warn(format("Dropped torn shelve log tail: %s, %d bytes", log, channel.size() - valid));
+            channel.truncate(valid);
+            channel.force(false);
+        }
 
-        if(Files.notExists(location)) {
-            try {
-                this.shelf = clazz.getConstructor().newInstance();
+        channel.position(valid);
+
+    }
+
+    /**
+     * Whether the damaged record at the offset is the last one, cut short by the end of the log or followed
+     * by nothing but the zeros a crash can leave behind, a record damaged anywhere else is corruption.
+     */
+    private static boolean isTail(ByteBuffer contents, int offset) {
+
+        if (contents.limit() - offset < Integer.BYTES) {
+            return true;
+        }
+
+        int length = contents.getInt(offset);
+        long end = offset + (length > 0 ? 2L * Integer.BYTES + length : Integer.BYTES);
+
+        for (long position = end; position < contents.limit(); position++) {
+            if (contents.get((int) position) != 0) {
+                return false;
             }
-            catch (NoSuchMethodException | InstantiationException |
-                    IllegalAccessException | InvocationTargetException exception) {
-                throw new IOException(exception);
+        }
+
+        return true;
+
+    }
+
+    private void migrate(Path legacy) throws IOException {
+
+        try (ObjectInputStream stream = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(legacy)))) {
+            for (Object path : (Collection<?>) stream.readObject()) {
+                if (!roots.containsKey(path.toString())) {
+                    put(new Root(path.toString(), -1, 0));
+                }
             }
-        } else {
-            try (ObjectInputStream stream = new ObjectInputStream(new FileInputStream(location.toFile()))) {
-                this.shelf = clazz.cast(stream.readObject());
+        }
+        catch (ClassNotFoundException | ClassCastException exception) {
+            throw new IOException(exception);
+        }
+
+        compact();
+        Files.delete(legacy);
+
+        logger.info(format("Migrated shelve: %s, roots: %d", legacy, roots.size()));
+
+    }
+
+    private static void write(DataOutput output, byte type, Root root) throws IOException {
+
+        output.writeByte(type);
+        output.writeUTF(root.path);
+
+        if (type == putRecord) {
+            output.writeInt(root.files);
+            output.writeLong(root.scanned);
+        }
+
+    }
+
+    private synchronized void append(byte type, Root root) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        write(new DataOutputStream(bytes), type, root);
+        byte[] payload = bytes.toByteArray();
+
+        CRC32 checksum = new CRC32();
+        checksum.update(payload);
+
+        ByteBuffer record = ByteBuffer.allocate(payload.length + 2 * Integer.BYTES)
+                .putInt(payload.length).put(payload).putInt((int) checksum.getValue());
+        record.flip();
+
+        long position = channel.position();
+
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
             }
-            catch (ClassNotFoundException | ClassCastException exception) {
-                throw new IOException(exception);
+            channel.force(false);
+        }
+        catch (IOException exception) {
+            channel.truncate(position);
+            channel.position(position);
+            throw exception;
+        }
+
+        if (++records >= Configuration.Indexing.getShelveRecords() && !compacting) {
+            compacting = true;
+            compactor.execute(() -> {
+                try {
+                    compact();
+                }
+                catch (IOException exception) {
+                    logger.warn(format("Failed to compact shelve: %s, caused by: %s", log, exception.getClass()));
+                }
+            });
+        }
+
+    }
+
+    private void put(Root root) throws IOException {
+        append(putRecord, root);
+        roots.put(root.path, root);
+    }
+
+    /**
+     * Writes the current state to a new snapshot and empties the log, records are absolute so replaying
+     * a log over a snapshot that already contains it is harmless.
+     */
+    private synchronized void compact() throws IOException {
+
+        compacting = false;
+        long start = System.nanoTime();
+
+        Path temporary = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile());
+             DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(file))) {
+
+            stream.writeInt(snapshotMagic);
+            stream.writeInt(roots.size());
+
+            for (Root root : roots.values()) {
+                write(stream, putRecord, root);
             }
+
+            stream.flush();
+            file.getFD().sync();
         }
 
-        this.location = location;
+        Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        IOUtils.fsync(snapshot.getParent(), true);
+
+        channel.truncate(0);
+        channel.position(0);
+        channel.force(false);
+
+        logger.debug(format("Compacted shelve, folded records: %d, roots: %d, took: %.1f ms",
+                records, roots.size(), (System.nanoTime() - start) / 1e6));
+
+        records = 0;
+
+    }
+
+    public synchronized Collection<Root> getRoots() {
+        return List.copyOf(roots.values());
+    }
+
+    public synchronized boolean contains(String path) {
+        return roots.containsKey(path);
+    }
+
+    public synchronized void add(String path) throws IOException {
+        if (!roots.containsKey(path)) {
+            put(new Root(path, -1, 0));
+        }
     }
 
-    public Collection<E> getShelf() {
-        return shelf;
+    public synchronized void remove(String path) throws IOException {
+        if (roots.containsKey(path)) {
+            append(removeRecord, roots.get(path));
+            roots.remove(path);
+        }
     }
 
-    public void sync() throws IOException {
-        try (ObjectOutputStream stream = new ObjectOutputStream(
-                new FileOutputStream(location.toFile(), false))){
-            stream.writeObject(shelf);
+    /**
+     * Records the outcome of a scan of a monitored directory.
+     */
+    public synchronized void update(String path, int files, long scanned) throws IOException {
+        if (roots.containsKey(path)) {
+            put(new Root(path, files, scanned));
         }
     }
 
     @Override
     public void close() throws IOException {
-        sync();
-        shelf.clear();
+
+        compactor.shutdown();
+
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            lock.release();
+            channel.close();
+            roots.clear();
+        }
+
     }
 
 }
@@ -0,0 +1,149 @@
+package indexer.watch;
+
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Collapses the events of each path into its net change, a path is due once it stayed quiet for the window.
+ */
+final class Coalescer {
+
+    private enum Change { CREATE, MODIFY, DELETE, REPLACE, RESCAN }
+
+    private static final class Pending {
+
+        private Change change;
+        private long due;
+
+        private Pending(Change change, long due) {
+            this.change = change;
+            this.due = due;
+        }
+
+    }
+
+    private final long window;
+    private final LinkedHashMap<Path, Pending> pending;
+
+    private long received;
+    private long dispatched;
+
+    Coalescer(long millis) {
+        this.window = TimeUnit.MILLISECONDS.toNanos(Math.max(0, millis));
+        this.pending = new LinkedHashMap<>();
+    }
+
+    private static Change merge(Change previous, Change next) {
+
+        if (previous == null) {
+            return next;
+        }
+
+        if (previous == Change.RESCAN || next == Change.RESCAN) {
+            return Change.RESCAN;
+        }
+
+        switch (previous) {
+            case CREATE:
+                return next == Change.DELETE ? null : Change.CREATE;
+            case MODIFY:
+                return next;
+            case DELETE:
+                return next == Change.DELETE ? Change.DELETE : Change.REPLACE;
+            case REPLACE:
+                return next == Change.DELETE ? Change.DELETE : Change.REPLACE;
+            default:
+                throw new IllegalStateException(previous.name());
+        }
+
+    }
+
+    private static Change toChange(WatchEvent.Kind<?> kind) {
+
+        if (kind == ENTRY_CREATE) {
+            return Change.CREATE;
+        }
+        if (kind == ENTRY_DELETE) {
+            return Change.DELETE;
+        }
+        if (kind == OVERFLOW) {
+            return Change.RESCAN;
+        }
+        return Change.MODIFY;
+
+    }
+
+    void offer(Path path, WatchEvent.Kind<?> kind, long now) {
+
+        received++;
+
+        Pending previous = pending.remove(path);
+        Change change = merge(previous == null ? null : previous.change, toChange(kind));
+
+        if (change != null) {
+            pending.put(path, new Pending(change, now + window));
+        }
+
+    }
+
+    boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    long getDelay(long now) {
+        return pending.isEmpty() ? Long.MAX_VALUE : Math.max(0, pending.values().iterator().next().due - now);
+    }
+
+    List<Map.Entry<Path, WatchEvent.Kind<?>>> drain(long now) {
+
+        List<Map.Entry<Path, WatchEvent.Kind<?>>> batch = new ArrayList<>();
+        Iterator<Map.Entry<Path, Pending>> iterator = pending.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+
+            Map.Entry<Path, Pending> entry = iterator.next();
+
+            if (entry.getValue().due > now) {
+                break;
+            }
+
+            switch (entry.getValue().change) {
+                case CREATE:
+                    batch.add(Map.entry(entry.getKey(), ENTRY_CREATE));
+                    break;
+                case MODIFY:
+                    batch.add(Map.entry(entry.getKey(), ENTRY_MODIFY));
+                    break;
+                case DELETE:
+                    batch.add(Map.entry(entry.getKey(), ENTRY_DELETE));
+                    break;
+                case REPLACE:
+                    batch.add(Map.entry(entry.getKey(), ENTRY_DELETE));
+                    batch.add(Map.entry(entry.getKey(), ENTRY_CREATE));
+                    break;
+                case RESCAN:
+                    batch.add(Map.entry(entry.getKey(), OVERFLOW));
+                    break;
+            }
+
+            iterator.remove();
+        }
+
+        dispatched += batch.size();
+        return batch;
+
+    }
+
+    long getReceived() {
+        return received;
+    }
+
+    long getDispatched() {
+        return dispatched;
+    }
+
+}
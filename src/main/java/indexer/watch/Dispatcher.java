@@ -0,0 +1,105 @@
+package indexer.watch;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.String.format;
+
+/**
+ * Runs handlers on single-threaded stripes chosen by a stripe path, so events sharing it stay in order,
+ * the handler is flushed whenever the queues drain.
+ */
+final class Dispatcher implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(Dispatcher.class);
+
+    private final WatchHandler handler;
+    private final List<ExecutorService> stripes;
+    private final AtomicInteger depth;
+
+    Dispatcher(WatchHandler handler, int workers) {
+
+        this.handler = handler;
+        this.stripes = new ArrayList<>(workers);
+        this.depth = new AtomicInteger();
+
+        for (int i = 0; i < workers; i++) {
+            String name = format("watch-dispatcher-%d", i);
+            stripes.add(Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }));
+        }
+
+    }
+
+    void submit(Path stripe, Path path, WatchEvent.Kind<?> kind) {
+
+        depth.incrementAndGet();
+
+        stripes.get(Math.floorMod(stripe.hashCode(), stripes.size())).execute(() -> {
+            try {
+                handler.handle(path, kind);
+            }
+            catch (IOException | RuntimeException exception) {
+                logger.error(format("Failed to handle: %s, at: %s, caused by: %s, reason: %s",
+                        kind, path, exception.getClass(), exception.getMessage()));
+            }
+            finally {
+                if (depth.decrementAndGet() == 0) {
+                    flush();
+                }
+            }
+        });
+
+    }
+
+    private void flush() {
+
+        try {
+            handler.flush();
+        }
+        catch (IOException | RuntimeException exception) {
+            logger.error(format("Failed to flush handler, caused by: %s, reason: %s",
+                    exception.getClass(), exception.getMessage()));
+        }
+
+    }
+
+    int getDepth() {
+        return depth.get();
+    }
+
+    /**
+     * Waits for the queued events, an interrupt stops the wait and is kept for the caller.
+     */
+    @Override
+    public void close() {
+
+        for (ExecutorService stripe : stripes) {
+            stripe.shutdown();
+        }
+
+        try {
+            for (ExecutorService stripe : stripes) {
+                stripe.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            }
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+
+    }
+
+}
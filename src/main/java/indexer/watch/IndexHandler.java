@@ -0,0 +1,55 @@
+package indexer.watch;
+
+import indexer.index.Index;
+import indexer.parse.Prefilter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+
+/**
+ * Applies watched changes to the index, new directories are registered as they appear. Files are filtered
+ * by the ignore globs of the watched root they belong to, like {@code --add} and {@code --refresh} do.
+ */
+public final class IndexHandler implements WatchHandler {
+
+    private final WatchDirectory watch;
+    private final Index index;
+
+    public IndexHandler(WatchDirectory watch, Index index) {
+        this.watch = watch;
+        this.index = index;
+    }
+
+    @Override
+    public void handle(Path path, WatchEvent.Kind<?> kind) throws IOException {
+        Prefilter prefilter = watch.getPrefilter(path);
+
+        switch (kind.name()) {
+            case "ENTRY_CREATE":
+                if (Files.isDirectory(path)) {
+                    watch.registerAll(path);
+                }
+                index.addDocuments(path, prefilter);
+                break;
+            case "ENTRY_MODIFY":
+                if (Files.isRegularFile(path)) {
+                    index.updateDocument(path, prefilter);
+                }
+                break;
+            case "ENTRY_DELETE":
+                index.deleteDocuments(path);
+                break;
+            case "OVERFLOW":
+                index.refreshDocuments(path, prefilter);
+                break;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        index.commit();
+    }
+
+}
@@ -0,0 +1,201 @@
+package indexer.watch;
+
+import indexer.parse.Prefilter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.String.format;
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Fallback for subtrees that could not be watched, each root is rescanned on its own schedule
+ * and the differences in modification time and size of regular files are reported as events,
+ * a root that no longer exists is reported as deleted and dropped.
+ */
+final class Poller implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(Poller.class);
+
+    private static final class Stamp {
+
+        private final long modified;
+        private final long size;
+
+        private Stamp(BasicFileAttributes attributes) {
+            this.modified = attributes.lastModifiedTime().toMillis();
+            this.size = attributes.size();
+        }
+
+        private boolean differs(Stamp stamp) {
+            return modified != stamp.modified || size != stamp.size;
+        }
+
+    }
+
+    private final long millis;
+    private final Queue<Map.Entry<Path, WatchEvent.Kind<?>>> events;
+    private final Set<Path> roots;
+    private final Map<Path, ScheduledFuture<?>> schedules;
+    private final ScheduledExecutorService scanners;
+
+    Poller(long millis, int threads, Queue<Map.Entry<Path, WatchEvent.Kind<?>>> events) {
+
+        AtomicInteger count = new AtomicInteger();
+
+        this.millis = Math.max(1, millis);
+        this.events = events;
+        this.roots = ConcurrentHashMap.newKeySet();
+        this.schedules = new ConcurrentHashMap<>();
+        this.scanners = Executors.newScheduledThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, format("watch-poller-%d", count.getAndIncrement()));
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    }
+
+    private static Map<Path, Stamp> scan(Path root, Prefilter prefilter) {
+
+        Map<Path, Stamp> stamps = new HashMap<>();
+
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+
+                @Override
+                public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                    return prefilter.isIgnoredDirectory(directory) ?
+                            FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+
+                    if (attributes.isRegularFile()) {
+                        stamps.put(file, new Stamp(attributes));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exception) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+            });
+        }
+        catch (IOException exception) {
+            logger.warn(format("Failed to poll: %s, caused by: %s", root, exception.getClass()));
+        }
+
+        return stamps;
+
+    }
+
+    /**
+     * Polls the subtree, skipping the directories the prefilter of its watched root ignores.
+     */
+    void add(Path root, Prefilter prefilter) {
+
+        if (covers(root) || !roots.add(root)) {
+            return;
+        }
+
+        Map<Path, Stamp> baseline = scan(root, prefilter);
+
+        schedules.put(root, scanners.scheduleWithFixedDelay(new Runnable() {
+
+            private Map<Path, Stamp> previous = baseline;
+
+            @Override
+            public void run() {
+
+                if (Files.notExists(root)) {
+                    logger.info(format("Polled directory is gone: %s", root));
+                    events.add(Map.entry(root, ENTRY_DELETE));
+                    remove(root);
+                    return;
+                }
+
+                Map<Path, Stamp> current = scan(root, prefilter);
+                int changes = 0;
+
+                for (Map.Entry<Path, Stamp> entry : current.entrySet()) {
+
+                    Stamp stamp = previous.get(entry.getKey());
+
+                    if (stamp == null) {
+                        events.add(Map.entry(entry.getKey(), ENTRY_CREATE));
+                        changes++;
+                    } else if (stamp.differs(entry.getValue())) {
+                        events.add(Map.entry(entry.getKey(), ENTRY_MODIFY));
+                        changes++;
+                    }
+                }
+
+                for (Path path : previous.keySet()) {
+                    if (!current.containsKey(path)) {
+                        events.add(Map.entry(path, ENTRY_DELETE));
+                        changes++;
+                    }
+                }
+
+                if (changes > 0) {
+                    logger.debug(format("Polled: %s, files: %d, changes: %d", root, current.size(), changes));
+                }
+
+                previous = current;
+            }
+
+        }, millis, millis, TimeUnit.MILLISECONDS));
+
+        logger.info(format("Polling directory: %s, files: %d, every: %d ms", root, baseline.size(), millis));
+
+    }
+
+    void remove(Path root) {
+
+        for (Path polled : Set.copyOf(roots)) {
+            if (polled.startsWith(root) && roots.remove(polled)) {
+                ScheduledFuture<?> schedule = schedules.remove(polled);
+
+                if (schedule != null) {
+                    schedule.cancel(false);
+                }
+
+                logger.info(format("Stopped polling directory: %s", polled));
+            }
+        }
+
+    }
+
+    boolean covers(Path path) {
+        return roots.stream().anyMatch(path::startsWith);
+    }
+
+    boolean isEmpty() {
+        return roots.isEmpty();
+    }
+
+    long getMillis() {
+        return millis;
+    }
+
+    @Override
+    public void close() {
+        scanners.shutdownNow();
+    }
+
+}
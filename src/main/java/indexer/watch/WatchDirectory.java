@@ -1,13 +1,18 @@
 package indexer.watch;
 
+import config.Configuration;
+import indexer.parse.Prefilter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
 import java.nio.file.*;
-import java.nio.file.attribute.BasicFileAttributes;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
 
 import static java.lang.String.format;
 import static java.nio.file.StandardWatchEventKinds.*;
@@ -18,11 +23,28 @@ public final class WatchDirectory {
 
     private final WatchService watchService;
     private final Map<WatchKey, Path> watchKeys;
+    private final Map<Path, Prefilter> prefilters;
+
+    private final Queue<Map.Entry<Path, WatchEvent.Kind<?>>> polled;
+    private final Poller poller;
+    private final ForkJoinPool registrars;
+
+    private volatile boolean exhausted;
+    private volatile Dispatcher dispatcher;
+
+    private int registering;
+    private boolean stopped;
+    private volatile boolean closing;
 
     public WatchDirectory() throws IOException {
 
         this.watchService = FileSystems.getDefault().newWatchService();
-        this.watchKeys = new HashMap<>();
+        this.watchKeys = new ConcurrentHashMap<>();
+        this.prefilters = new ConcurrentHashMap<>();
+        this.polled = new ConcurrentLinkedQueue<>();
+        this.poller = new Poller(Configuration.Watching.getPollMillis(),
+                Configuration.Watching.getPollThreads(), polled);
+        this.registrars = new ForkJoinPool(Configuration.Watching.getRegisterThreads());
 
         logger.debug("Initialized directory watcher");
 
@@ -30,34 +52,253 @@ public final class WatchDirectory {
 
     private void register(final Path path) throws IOException {
 
-        WatchKey key = path.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+        if (watchKeys.size() >= Configuration.Watching.getWatchLimit()) {
+            throw new WatchLimitException(format("Watch limit of %d reached", Configuration.Watching.getWatchLimit()));
+        }
+
+        WatchKey key;
+
+        try {
+            key = path.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+        }
+        catch (IOException exception) {
+            // the inotify watch service reports running out of watches only by its message
+            if (exception.getMessage() != null && exception.getMessage().contains("inotify watches reached")) {
+                throw new WatchLimitException(exception.getMessage());
+            }
+            throw exception;
+        }
+
         watchKeys.put(key, path);
 
     }
 
-    public void registerAll(final Path path) throws IOException {
+    private final class Registration extends RecursiveAction {
 
-        Files.walkFileTree(path, new SimpleFileVisitor<>() {
+        private static final long serialVersionUID = 1L;
 
-            @Override
-            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+        private final Path directory;
 
-                register(directory);
-                logger.info(format("Registered directory: %s", directory));
-                return FileVisitResult.CONTINUE;
+        private Registration(Path directory) {
+            this.directory = directory;
+        }
 
+        @Override
+        protected void compute() {
+
+            Prefilter prefilter = getPrefilter(directory);
+
+            if (poller.covers(directory) || prefilter.isIgnoredDirectory(directory)) {
+                return;
             }
 
-            @Override
-            public FileVisitResult visitFileFailed(Path file, IOException exception) {
+            boolean registered = false;
 
+            if (!exhausted) {
+                try {
+                    register(directory);
+                    registered = true;
+                    logger.info(format("Registered directory: %s", directory));
+                }
+                catch (WatchLimitException exception) {
+                    if (!exhausted) {
+                        exhausted = true;
+                        logger.warn(format("Watch limit reached at: %s, %d directories watched, falling back to polling",
+                                directory, watchKeys.size()));
+                    }
+                }
+                catch (IOException exception) {
+                    logger.warn(format("Failed to register directory: %s, caused by: %s",
+                            directory, exception.getClass()));
+                    return;
+                }
+            }
+
+            if (!registered) {
+                poller.add(directory, prefilter);
+                return;
+            }
+
+            List<Registration> children = new ArrayList<>();
+
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                    child -> Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS))) {
+                stream.forEach(child -> children.add(new Registration(child)));
+            }
+            catch (IOException | DirectoryIteratorException exception) {
                 logger.warn(format("Failed to register directory: %s, caused by: %s",
-                        file, exception.getClass()));
-                return FileVisitResult.SKIP_SUBTREE;
+                        directory, exception.getClass()));
+            }
+
+            invokeAll(children);
+
+        }
+
+    }
 
+    /**
+     * Returns the prefilter of the watched root the path lies under, with the ignore globs of that root.
+     */
+    public Prefilter getPrefilter(Path path) {
+
+        Path owner = getRoot(path);
+        return owner == null ? Prefilter.global() : prefilters.get(owner);
+
+    }
+
+    /**
+     * Deepest watched root the path lies in, or null.
+     */
+    private Path getRoot(Path path) {
+
+        Path owner = null;
+
+        for (Path root : prefilters.keySet()) {
+            if (path.startsWith(root) && (owner == null || root.startsWith(owner))) {
+                owner = root;
             }
+        }
+
+        return owner;
+
+    }
+
+    /**
+     * Path choosing the dispatch stripe of an event, the top level directory of the watched root it lies in,
+     * so events of a subtree and of everything below it are handled in order.
+     */
+    private Path getStripe(Path path) {
+
+        Path root = getRoot(path);
+
+        if (root == null || path.equals(root)) {
+            return path;
+        }
+
+        return root.resolve(root.relativize(path).getName(0));
 
-        });
+    }
+
+    /**
+     * Watches the directory and every directory beneath it, a directory outside the watched roots
+     * becomes a root of its own. Returns false if the watch loop has already stopped, the directory
+     * then has to be handed to a new watcher.
+     */
+    public boolean registerAll(final Path path) throws IOException {
+
+        synchronized (this) {
+            if (stopped) {
+                return false;
+            }
+            registering++;
+        }
+
+        try {
+            if (!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                return true;
+            }
+
+            if (prefilters.keySet().stream().noneMatch(path::startsWith)) {
+                prefilters.put(path, Prefilter.forRoot(path));
+            }
+
+            registrars.invoke(new Registration(path));
+            return true;
+        }
+        finally {
+            synchronized (this) {
+                registering--;
+            }
+        }
+
+    }
+
+    /**
+     * Whether the watch loop goes on, it stops once nothing is watched, polled, pending or being registered,
+     * after that no directory is accepted anymore.
+     */
+    private synchronized boolean isWatching(Coalescer coalescer) {
+
+        if (registering == 0 && watchKeys.isEmpty() && coalescer.isEmpty() && poller.isEmpty() && polled.isEmpty()) {
+            stopped = true;
+        }
+
+        return !stopped;
+
+    }
+
+    /**
+     * Stops watching and polling the path and every directory beneath it, directories registered afterwards
+     * are watched again if that freed any watches.
+     */
+    public void unregisterAll(final Path path) {
+
+        boolean freed = false;
+
+        for (Map.Entry<WatchKey, Path> entry : watchKeys.entrySet()) {
+            if (entry.getValue().startsWith(path)) {
+                entry.getKey().cancel();
+                watchKeys.remove(entry.getKey());
+                freed = true;
+                logger.info(format("Unregistered directory: %s", entry.getValue()));
+            }
+        }
+
+        if (freed && exhausted) {
+            exhausted = false;
+            logger.info(format("Watches freed, %d directories watched, new directories are watched again",
+                    watchKeys.size()));
+        }
+
+        poller.remove(path);
+        prefilters.keySet().removeIf(root -> root.startsWith(path));
+
+    }
+
+    /**
+     * Makes the watch loop stop, events already received are still handled before run returns.
+     */
+    public void stop() throws IOException {
+
+        closing = true;
+
+        synchronized (this) {
+            stopped = true;
+        }
+
+        watchService.close();
+
+    }
+
+    public int getQueueDepth() {
+        Dispatcher current = dispatcher;
+        return current == null ? 0 : current.getDepth();
+    }
+
+    private void dispatch(Coalescer coalescer, WatchHandler handler, long now) throws IOException {
+
+        List<Map.Entry<Path, WatchEvent.Kind<?>>> batch = coalescer.drain(now);
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        for (Map.Entry<Path, WatchEvent.Kind<?>> event : batch) {
+            logger.debug(format("Dispatched: %s, at: %s", event.getValue(), event.getKey()));
+
+            if (dispatcher != null) {
+                dispatcher.submit(getStripe(event.getKey()), event.getKey(), event.getValue());
+            } else {
+                handler.handle(event.getKey(), event.getValue());
+            }
+        }
+
+        if (dispatcher == null) {
+            handler.flush();
+        }
+
+        logger.debug(format("Dispatched batch: %d event(s), total received: %d, total dispatched: %d, queued: %d",
+                batch.size(), coalescer.getReceived(), coalescer.getDispatched(), getQueueDepth()));
 
     }
 
@@ -65,34 +306,86 @@ public final class WatchDirectory {
 
         logger.info("Started directory watcher");
 
+        Coalescer coalescer = new Coalescer(Configuration.Watching.getQuietMillis());
+
+        if (Configuration.Watching.getDispatchWorkers() > 0) {
+            dispatcher = new Dispatcher(handler, Configuration.Watching.getDispatchWorkers());
+        }
+
         try {
-            while (!watchKeys.isEmpty()) {
+            while (isWatching(coalescer)) {
+
+                long delay = coalescer.getDelay(System.nanoTime());
+
+                if (!poller.isEmpty()) {
+                    delay = Math.min(delay, TimeUnit.MILLISECONDS.toNanos(poller.getMillis()));
+                }
+
+                WatchKey key = delay == Long.MAX_VALUE ?
+                        watchService.take() : watchService.poll(delay, TimeUnit.NANOSECONDS);
 
-                WatchKey key = watchService.take();
+                for (Map.Entry<Path, WatchEvent.Kind<?>> event = polled.poll(); event != null; event = polled.poll()) {
+                    logger.debug(format("Polled event: %s, at: %s", event.getValue(), event.getKey()));
+                    coalescer.offer(event.getKey(), event.getValue(), System.nanoTime());
+                }
 
-                for (WatchEvent<?> event : key.pollEvents()) {
+                if (key != null) {
 
-                    WatchEvent.Kind<?> kind = event.kind();
+                    for (WatchEvent<?> event : key.pollEvents()) {
 
-                    Path path = watchKeys.get(key).resolve((Path) event.context());
+                        WatchEvent.Kind<?> kind = event.kind();
 
-                    logger.debug(format("Event: %s, at: %s", kind, path));
+                        if (kind == OVERFLOW) {
+                            logger.warn(format("Events lost at: %s, kernel queue overflowed, rescanning",
+                                    watchKeys.get(key)));
+                            coalescer.offer(watchKeys.get(key), kind, System.nanoTime());
+                            continue;
+                        }
 
-                    handler.handle(path, kind);
+                        Path path = watchKeys.get(key).resolve((Path) event.context());
 
-                }
+                        logger.debug(format("Event: %s, at: %s", kind, path));
 
-                if (!key.reset()) {
-                    logger.info(format("Unregistered directory: %s", watchKeys.get(key)));
-                    watchKeys.remove(key);
+                        coalescer.offer(path, kind, System.nanoTime());
+
+                    }
+
+                    if (!key.reset()) {
+                        logger.info(format("Unregistered directory: %s", watchKeys.get(key)));
+                        watchKeys.remove(key);
+                    }
                 }
+
+                dispatch(coalescer, handler, System.nanoTime());
             }
 
-            logger.error("No directory is registered");
+            if (closing) {
+                // events still waiting for their quiet period would be lost otherwise
+                dispatch(coalescer, handler, Long.MAX_VALUE);
+            } else {
+                logger.error("No directory is registered");
+            }
+        }
+        catch (ClosedWatchServiceException exception) {
+            logger.debug("Directory watcher was stopped");
+            dispatch(coalescer, handler, Long.MAX_VALUE);
         }
         catch (InterruptedException exception) {
             logger.error(format("Directory watcher was interrupted, caused by: %s", exception.getClass()));
         }
+        finally {
+            synchronized (this) {
+                stopped = true;
+            }
+
+            poller.close();
+            registrars.shutdown();
+
+            if (dispatcher != null) {
+                dispatcher.close();
+                dispatcher = null;
+            }
+        }
 
         logger.info("Stopped directory watcher");
 
@@ -9,4 +9,7 @@ public interface WatchHandler {
 
     void handle(Path path, WatchEvent.Kind<?> kind) throws IOException;
 
+    default void flush() throws IOException {
+    }
+
 }
@@ -0,0 +1,15 @@
+package indexer.watch;
+
+import java.io.IOException;
+
+/**
+ * No more directories can be watched, either the configured limit or the one of the operating system is reached.
+ */
+final class WatchLimitException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    WatchLimitException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,97 @@
+package searcher;
+
+import searcher.result.Page;
+import searcher.result.SearchResult;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.lang.String.format;
+
+/**
+ * Least recently used result pages of a single index version, a newer version clears the cache,
+ * gets and puts of an older one, like those of a pinned paging session, leave it alone.
+ */
+public final class ResultCache {
+
+    private final int capacity;
+    private final LinkedHashMap<String, Page> entries;
+
+    private long version;
+    private long bytes;
+
+    private long hits;
+    private long misses;
+    private long invalidations;
+
+    ResultCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.version = -1;
+    }
+
+    private static long getBytes(String key, Page page) {
+        return 2L * key.length() + page.getResults().stream().mapToLong(SearchResult::ramBytesUsed).sum();
+    }
+
+    /**
+     * Moves the cache on to a newer version, returns false for an older one.
+     */
+    private boolean validate(long version) {
+
+        if (version < this.version) {
+            return false;
+        }
+
+        if (version > this.version) {
+            if (!entries.isEmpty()) {
+                invalidations++;
+            }
+            entries.clear();
+            bytes = 0;
+            this.version = version;
+        }
+
+        return true;
+
+    }
+
+    public synchronized Page get(long version, String key) {
+
+        Page page = validate(version) ? entries.get(key) : null;
+
+        if (page == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+
+        return page;
+
+    }
+
+    public synchronized void put(long version, String key, Page page) {
+
+        if (capacity <= 0 || !validate(version)) {
+            return;
+        }
+
+        Page previous = entries.put(key, page);
+        bytes += getBytes(key, page) - (previous == null ? 0 : getBytes(key, previous));
+
+        while (entries.size() > capacity) {
+            Map.Entry<String, Page> eldest = entries.entrySet().iterator().next();
+            bytes -= getBytes(eldest.getKey(), eldest.getValue());
+            entries.remove(eldest.getKey());
+        }
+
+    }
+
+    @Override
+    public synchronized String toString() {
+        return format("entries: %d of %d, size: %d bytes, hits: %d, misses: %d, hit ratio: %.2f, invalidations: %d",
+                entries.size(), capacity, bytes, hits, misses,
+                hits + misses > 0 ? (double) hits / (hits + misses) : 0.0, invalidations);
+    }
+
+}
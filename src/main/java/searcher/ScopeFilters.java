@@ -0,0 +1,175 @@
+package searcher;
+
+import org.apache.lucene.index.*;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.StringHelper;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.util.*;
+
+import static java.lang.String.format;
+
+/**
+ * Least recently used per segment bitsets of the documents under a directory. Entries are keyed by the segment
+ * core, which survives reopening and deletions, and are dropped once the segment is closed.
+ */
+public final class ScopeFilters {
+
+    private static final class Key {
+
+        private final IndexReader.CacheKey core;
+        private final String scope;
+        private final boolean hierarchical;
+
+        private Key(IndexReader.CacheKey core, String scope, boolean hierarchical) {
+            this.core = core;
+            this.scope = scope;
+            this.hierarchical = hierarchical;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && core == ((Key) other).core && scope.equals(((Key) other).scope) &&
+                    hierarchical == ((Key) other).hierarchical;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * System.identityHashCode(core) + scope.hashCode()) + Boolean.hashCode(hierarchical);
+        }
+
+    }
+
+    private final int capacity;
+    private final LinkedHashMap<Key, FixedBitSet> entries;
+    private final Set<IndexReader.CacheKey> listened;
+
+    private long bytes;
+    private long hits;
+    private long misses;
+
+    ScopeFilters(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.listened = Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    /**
+     * Marks the documents with the scope among their ancestors, or for an index not marked as hierarchical,
+     * where a segment may mix documents with and without the ancestor field, the ones whose real_path term
+     * lies under the scope.
+     */
+    private static FixedBitSet build(LeafReader reader, String scope, boolean hierarchical) throws IOException {
+
+        FixedBitSet bits = new FixedBitSet(reader.maxDoc());
+
+        if (hierarchical) {
+
+            for (Term term : List.of(new Term("ancestor", scope), new Term("real_path", scope))) {
+                PostingsEnum postings = reader.postings(term, PostingsEnum.NONE);
+
+                if (postings != null) {
+                    bits.or(postings);
+                }
+            }
+
+        } else {
+
+            String separator = FileSystems.getDefault().getSeparator();
+            BytesRef exact = new BytesRef(scope);
+            BytesRef prefix = new BytesRef(scope.endsWith(separator) ? scope : scope + separator);
+            Terms terms = reader.terms("real_path");
+
+            // older documents have no real_path doc values, but every one of them has the indexed term
+            if (terms != null) {
+
+                TermsEnum iterator = terms.iterator();
+                PostingsEnum postings = null;
+
+                if (iterator.seekExact(exact)) {
+                    postings = iterator.postings(null, PostingsEnum.NONE);
+                    bits.or(postings);
+                }
+
+                if (iterator.seekCeil(prefix) != TermsEnum.SeekStatus.END) {
+                    for (BytesRef path = iterator.term(); path != null && StringHelper.startsWith(path, prefix);
+                         path = iterator.next()) {
+                        postings = iterator.postings(postings, PostingsEnum.NONE);
+                        bits.or(postings);
+                    }
+                }
+            }
+
+        }
+
+        return bits;
+
+    }
+
+    public FixedBitSet get(LeafReaderContext context, String scope, boolean hierarchical) throws IOException {
+
+        IndexReader.CacheHelper helper = context.reader().getCoreCacheHelper();
+
+        if (helper == null || capacity <= 0) {
+            return build(context.reader(), scope, hierarchical);
+        }
+
+        Key key = new Key(helper.getKey(), scope, hierarchical);
+
+        synchronized (this) {
+            FixedBitSet bits = entries.get(key);
+
+            if (bits != null) {
+                hits++;
+                return bits;
+            }
+
+            misses++;
+        }
+
+        FixedBitSet bits = build(context.reader(), scope, hierarchical);
+
+        synchronized (this) {
+            if (listened.add(key.core)) {
+                helper.addClosedListener(this::evict);
+            }
+
+            FixedBitSet previous = entries.put(key, bits);
+            bytes += bits.ramBytesUsed() - (previous == null ? 0 : previous.ramBytesUsed());
+
+            while (entries.size() > capacity) {
+                Map.Entry<Key, FixedBitSet> eldest = entries.entrySet().iterator().next();
+                bytes -= eldest.getValue().ramBytesUsed();
+                entries.remove(eldest.getKey());
+            }
+        }
+
+        return bits;
+
+    }
+
+    private synchronized void evict(IndexReader.CacheKey core) {
+
+        listened.remove(core);
+        Iterator<Map.Entry<Key, FixedBitSet>> iterator = entries.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+            Map.Entry<Key, FixedBitSet> entry = iterator.next();
+
+            if (entry.getKey().core == core) {
+                bytes -= entry.getValue().ramBytesUsed();
+                iterator.remove();
+            }
+        }
+
+    }
+
+    @Override
+    public synchronized String toString() {
+        return format("entries: %d of %d, size: %d bytes, hits: %d, misses: %d",
+                entries.size(), capacity, bytes, hits, misses);
+    }
+
+}
@@ -2,20 +2,36 @@ package searcher;
 
 import config.Configuration;
 import config.Properties;
+import indexer.index.Index;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherLifetimeManager;
+import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.uhighlight.DefaultPassageFormatter;
+import org.apache.lucene.search.uhighlight.PassageFormatter;
 import org.apache.lucene.search.uhighlight.UnifiedHighlighter;
+import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import searcher.search.Search;
 
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static java.lang.String.format;
 
@@ -23,64 +39,240 @@ public final class Searches implements AutoCloseable {
 
     private static final Logger logger = LogManager.getLogger(Searches.class);
 
-    private final IndexSearcher searcher;
+    private final Path path;
+    private final Directory directory;
+    private final SearcherManager manager;
+    private final SearcherLifetimeManager sessions;
+    private final long staleness;
 
     private final Map<String, Search> searches;
     private final Map<String, Analyzer> analyzers;
+    private final Analyzer fieldAnalyzer;
+    private final ExecutorService executor;
+    private final ExecutorService slicer;
 
-    private final Map<String, Map<String, UnifiedHighlighter>> highlighters;
+    private final Map<String, PassageFormatter> formatters;
+    private final ResultCache results;
+    private final ScopeFilters filters;
 
+    private volatile long checked;
+    private long reopens;
+    private long reopenNanos;
+    private long reopenNanosMax;
 
     public Searches(Path path, Properties properties) throws IOException {
 
-        this.searcher = new IndexSearcher(DirectoryReader.open(FSDirectory.open(path)));
+        this.path = path;
+        this.slicer = Configuration.Searching.getSearchWorkers() > 1 ?
+                Executors.newFixedThreadPool(Configuration.Searching.getSearchWorkers(), runnable -> {
+                    Thread thread = new Thread(runnable, "searcher-slices");
+                    thread.setDaemon(true);
+                    return thread;
+                }) : null;
+
+        this.directory = FSDirectory.open(path);
+        this.manager = new SearcherManager(directory, new SearcherFactory() {
+
+            @Override
+            public IndexSearcher newSearcher(IndexReader reader, IndexReader previous) {
+                return slicer != null ? new SlicedSearcher(reader, slicer) : new IndexSearcher(reader);
+            }
+        });
+
+        this.sessions = new SearcherLifetimeManager();
+        this.staleness = TimeUnit.MILLISECONDS.toNanos(Configuration.Searching.getStalenessMillis());
+        this.checked = System.nanoTime();
+
+        this.manager.addListener(new ReferenceManager.RefreshListener() {
+
+            private long start;
+
+            @Override
+            public void beforeRefresh() {
+                start = System.nanoTime();
+            }
+
+            @Override
+            public void afterRefresh(boolean refreshed) {
+                if (refreshed) {
+                    long took = System.nanoTime() - start;
+
+                    synchronized (Searches.this) {
+                        reopens++;
+                        reopenNanos += took;
+                        reopenNanosMax = Math.max(reopenNanosMax, took);
+                    }
+
+                    logger.debug(format("Reopened index searcher, took: %.1f ms", took / 1e6));
+                }
+            }
+        });
 
         this.searches = Configuration.Searches.getSearches(this, properties);
         this.analyzers = Configuration.Languages.getAnalyzers();
+        this.fieldAnalyzer = new PerFieldAnalyzerWrapper(new StandardAnalyzer(), analyzers.entrySet().stream()
+                .collect(Collectors.toMap(entry -> format("contents_%s", entry.getKey()), Map.Entry::getValue)));
 
-        this.highlighters = new HashMap<>();
+        this.executor = Executors.newFixedThreadPool(analyzers.size(), runnable -> {
+            Thread thread = new Thread(runnable, "searcher-fields");
+            thread.setDaemon(true);
+            return thread;
+        });
 
-        logger.debug(format("Opened index searcher at: %s", path));
+        this.formatters = new HashMap<>();
+        this.results = new ResultCache(Configuration.Searching.getCacheEntries());
+        this.filters = new ScopeFilters(Configuration.Searching.getScopeEntries());
+
+        logger.debug(format("Opened index searcher at: %s, search workers: %d",
+                path, Configuration.Searching.getSearchWorkers()));
 
     }
 
     public Analyzer getAnalyzer(String language) {
-        return analyzers.get(language);
+        return Configuration.Languages.isAll(language) ? fieldAnalyzer : analyzers.get(language);
     }
 
-    public UnifiedHighlighter getHighlighter(String language, String color) {
+    public ExecutorService getExecutor() {
+        return executor;
+    }
 
-        if (highlighters.containsKey(color)) {
-            if (highlighters.get(color).containsKey(language)) {
-                return highlighters.get(color).get(language);
-            }
-        } else {
-            highlighters.put(color, new HashMap<>());
+    /**
+     * Highlighter of the language over the searcher, a cheap view built per call, only the formatters are kept,
+     * one per color, so switching between searchers costs nothing.
+     */
+    public UnifiedHighlighter getHighlighter(IndexSearcher searcher, String language, String color) {
+
+        PassageFormatter formatter;
+
+        synchronized (formatters) {
+            formatter = formatters.computeIfAbsent(color, key -> new DefaultPassageFormatter(
+                    Configuration.Colors.getCode(key),
+                    Configuration.Colors.getCode(key).isEmpty() ? "" : Configuration.Colors.getCode("default"),
+                    "... ", false
+            ));
         }
 
         UnifiedHighlighter highlighter = new UnifiedHighlighter(searcher, getAnalyzer(language));
-        highlighter.setFormatter(new DefaultPassageFormatter(
-                Configuration.Colors.getCode(color), Configuration.Colors.getCode("default"),
-                "... ", false
-        ));
-
-        highlighters.get(color).put(language, highlighter);
+        highlighter.setFormatter(formatter);
 
         return highlighter;
 
     }
 
-    public IndexSearcher getSearcher() {
-        return searcher;
+    public void refresh() throws IOException {
+        manager.maybeRefresh();
+        checked = System.nanoTime();
+    }
+
+    public IndexSearcher acquire() throws IOException {
+
+        if (System.nanoTime() - checked >= staleness) {
+            refresh();
+        }
+
+        return manager.acquire();
+
+    }
+
+    /**
+     * Keeps the searcher for a paging session and returns its version, later pages acquire it by that version,
+     * so their cursors keep pointing at the same documents.
+     */
+    public long record(IndexSearcher searcher) throws IOException {
+        sessions.prune(new SearcherLifetimeManager.PruneByAge(Configuration.Searching.getPageSeconds()));
+        return sessions.record(searcher);
+    }
+
+    /**
+     * Returns the searcher recorded with the version, or {@code null} once it was pruned, searchers are pruned
+     * after outliving a newer one by {@code searcher.page.seconds}.
+     */
+    public IndexSearcher acquire(long version) throws IOException {
+        sessions.prune(new SearcherLifetimeManager.PruneByAge(Configuration.Searching.getPageSeconds()));
+        return sessions.acquire(version);
+    }
+
+    /**
+     * Releases a searcher acquired either way.
+     */
+    public void release(IndexSearcher searcher) throws IOException {
+        manager.release(searcher);
+    }
+
+    public long getVersion() throws IOException {
+
+        IndexSearcher searcher = manager.acquire();
+
+        try {
+            return ((DirectoryReader) searcher.getIndexReader()).getVersion();
+        }
+        finally {
+            manager.release(searcher);
+        }
+
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public ResultCache getResultCache() {
+        return results;
+    }
+
+    public ScopeFilters getScopeFilters() {
+        return filters;
     }
 
     public Search forType(String type) {
         return searches.get(type);
     }
 
+    /**
+     * Milliseconds since the newest commit the current searcher does not show yet, {@code 0} when it is up to
+     * date, or {@code -1} if that commit does not say when it was made.
+     */
+    public long getStaleness() throws IOException {
+
+        IndexSearcher searcher = manager.acquire();
+
+        try {
+            if (((DirectoryReader) searcher.getIndexReader()).isCurrent()) {
+                return 0;
+            }
+        }
+        finally {
+            manager.release(searcher);
+        }
+
+        List<IndexCommit> commits = DirectoryReader.listCommits(directory);
+        long committed = Index.getCommitted(commits.get(commits.size() - 1));
+
+        return committed > 0 ? Math.max(0, System.currentTimeMillis() - committed) : -1;
+
+    }
+
+    public synchronized String getStatistics() throws IOException {
+        return format("index version: %d, staleness: %d ms, last check: %d ms ago, reopens: %d, " +
+                        "reopen latency mean: %.1f ms, max: %.1f ms\nresult cache, %s\nscope filters, %s",
+                getVersion(), getStaleness(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - checked), reopens,
+                reopens > 0 ? reopenNanos / 1e6 / reopens : 0.0, reopenNanosMax / 1e6, results, filters);
+    }
+
     @Override
     public void close() throws IOException {
-        searcher.getIndexReader().close();
+        for (Search search : searches.values()) {
+            search.close();
+        }
+
+        executor.shutdownNow();
+        sessions.close();
+        manager.close();
+
+        if (slicer != null) {
+            slicer.shutdownNow();
+        }
+
         logger.debug("Closed index searcher");
     }
 }
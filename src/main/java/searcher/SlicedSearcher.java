@@ -0,0 +1,59 @@
+package searcher;
+
+import config.Configuration;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.IndexSearcher;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Index searcher running each query over slices of segments concurrently, a large segment
+ * makes a slice of its own, the small ones are grouped up to a document or segment count.
+ */
+final class SlicedSearcher extends IndexSearcher {
+
+    SlicedSearcher(IndexReader reader, ExecutorService executor) {
+        super(reader, executor);
+    }
+
+    @Override
+    protected LeafSlice[] slices(List<LeafReaderContext> leaves) {
+
+        List<LeafReaderContext> sorted = new ArrayList<>(leaves);
+        sorted.sort(Comparator.comparingInt((LeafReaderContext leaf) -> leaf.reader().maxDoc()).reversed());
+
+        List<LeafSlice> slices = new ArrayList<>();
+        List<LeafReaderContext> group = new ArrayList<>();
+        long documents = 0;
+
+        for (LeafReaderContext leaf : sorted) {
+
+            if (leaf.reader().maxDoc() > Configuration.Searching.getSliceDocuments()) {
+                slices.add(new LeafSlice(leaf));
+                continue;
+            }
+
+            group.add(leaf);
+            documents += leaf.reader().maxDoc();
+
+            if (documents > Configuration.Searching.getSliceDocuments() ||
+                    group.size() >= Configuration.Searching.getSliceSegments()) {
+                slices.add(new LeafSlice(group.toArray(LeafReaderContext[]::new)));
+                group.clear();
+                documents = 0;
+            }
+        }
+
+        if (!group.isEmpty()) {
+            slices.add(new LeafSlice(group.toArray(LeafReaderContext[]::new)));
+        }
+
+        return slices.toArray(LeafSlice[]::new);
+
+    }
+
+}
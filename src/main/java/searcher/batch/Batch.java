@@ -0,0 +1,230 @@
+package searcher.batch;
+
+import config.Configuration;
+import config.Properties;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import searcher.Searches;
+import searcher.result.ContextSearchResult;
+import searcher.result.SearchResult;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.lang.String.format;
+
+/**
+ * Runs queries read line by line concurrently against a single searcher, results are written
+ * as JSON lines in the order of the queries.
+ */
+public final class Batch implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(Batch.class);
+
+    private static final class Outcome {
+
+        private final String json;
+        private final long nanos;
+        private final boolean failed;
+
+        private Outcome(String json, long nanos, boolean failed) {
+            this.json = json;
+            this.nanos = nanos;
+            this.failed = failed;
+        }
+
+    }
+
+    private final Searches searches;
+    private final boolean shared;
+    private final Properties properties;
+    private final ExecutorService workers;
+    private final int window;
+
+    private Batch(Searches searches, Properties properties, boolean shared) {
+
+        this.searches = searches;
+        this.properties = properties;
+        this.shared = shared;
+
+        int size = Math.max(1, Configuration.Searching.getBatchWorkers());
+        this.workers = Executors.newFixedThreadPool(size, runnable -> {
+            Thread thread = new Thread(runnable, "batch-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.window = 4 * size;
+
+        logger.debug(format("Initialized batch search, workers: %d, type: %s, language: %s, limit: %d, details: %s",
+                size, properties.getSearchType(), properties.getSearchLanguage(), properties.getSearchLimit(),
+                properties.getContextDetails()));
+
+    }
+
+    /**
+     * Runs the queries on searches owned by someone else, which are left open on close,
+     * the properties should be the ones the searches were created with.
+     */
+    public Batch(Searches searches, Properties properties) {
+        this(searches, properties, true);
+    }
+
+    public Batch(Path path, Properties properties) throws IOException {
+        this(new Searches(path, getUncolored(properties)), properties, false);
+    }
+
+    public Batch(Path path) throws IOException {
+        this(path, Properties.getDefault());
+    }
+
+    /**
+     * Highlights are written without terminal escape codes.
+     */
+    public static Properties getUncolored(Properties properties) {
+        properties.setContextColor("none");
+        return properties;
+    }
+
+    private static String quote(String text) {
+
+        StringBuilder builder = new StringBuilder(text.length() + 2).append('"');
+
+        for (int i = 0; i < text.length(); i++) {
+            char character = text.charAt(i);
+
+            switch (character) {
+                case '"' : builder.append("\\\""); break;
+                case '\\' : builder.append("\\\\"); break;
+                case '\n' : builder.append("\\n"); break;
+                case '\r' : builder.append("\\r"); break;
+                case '\t' : builder.append("\\t"); break;
+                default :
+                    if (character < 0x20) {
+                        builder.append(format(Locale.ROOT, "\\u%04x", (int) character));
+                    } else {
+                        builder.append(character);
+                    }
+            }
+        }
+
+        return builder.append('"').toString();
+
+    }
+
+    private static String toJson(SearchResult result) {
+
+        StringBuilder builder = new StringBuilder()
+                .append("{\"path\":").append(quote(result.getPath()))
+                .append(",\"score\":").append(result.getScore());
+
+        if (result instanceof ContextSearchResult && ((ContextSearchResult) result).getContext() != null) {
+            builder.append(",\"highlight\":").append(quote(((ContextSearchResult) result).getContext()));
+        }
+
+        return builder.append('}').toString();
+
+    }
+
+    private Outcome execute(int index, String query) {
+
+        long start = System.nanoTime();
+
+        try {
+            List<SearchResult> results = searches.forType(properties.getSearchType()).run(query);
+            long took = System.nanoTime() - start;
+
+            StringJoiner joiner = new StringJoiner(",", "[", "]");
+            results.forEach(result -> joiner.add(toJson(result)));
+
+            return new Outcome(format(Locale.ROOT, "{\"index\":%d,\"query\":%s,\"took_ms\":%.3f,\"count\":%d,\"results\":%s}",
+                    index, quote(query), took / 1e6, results.size(), joiner), took, false);
+        }
+        catch (IOException | RuntimeException exception) {
+            long took = System.nanoTime() - start;
+
+            logger.warn(format("Failed to search: %s, caused by: %s, reason: %s",
+                    query, exception.getClass(), exception.getMessage()));
+
+            return new Outcome(format(Locale.ROOT, "{\"index\":%d,\"query\":%s,\"took_ms\":%.3f,\"error\":%s}",
+                    index, quote(query), took / 1e6, quote(String.valueOf(exception.getMessage()))), took, true);
+        }
+
+    }
+
+    private static Outcome await(Future<Outcome> future) throws IOException {
+
+        try {
+            return future.get();
+        }
+        catch (ExecutionException exception) {
+            throw new IOException(exception.getCause());
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(exception.getMessage());
+        }
+
+    }
+
+    private static double getPercentile(long[] sorted, double percentile) {
+        return sorted.length == 0 ? 0.0 :
+                sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1)] / 1e6;
+    }
+
+    public void run(BufferedReader queries, PrintStream output) throws IOException {
+
+        long start = System.nanoTime();
+
+        Deque<Future<Outcome>> pending = new ArrayDeque<>();
+        List<Long> latencies = new ArrayList<>();
+        int count = 0;
+        int failed = 0;
+
+        for (String line = queries.readLine(); line != null || !pending.isEmpty();
+             line = line == null ? null : queries.readLine()) {
+
+            if (line != null && !line.isBlank()) {
+                int index = count++;
+                String query = line.trim();
+                pending.add(workers.submit(() -> execute(index, query)));
+            }
+
+            if (!pending.isEmpty() && (line == null || pending.size() >= window)) {
+                Outcome outcome = await(pending.poll());
+                output.println(outcome.json);
+                latencies.add(outcome.nanos);
+                failed += outcome.failed ? 1 : 0;
+            }
+        }
+
+        output.flush();
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+
+        logger.info(format("Queries: %d, failed: %d, took: %.1f s, throughput: %.1f queries/s, " +
+                        "latency p50: %.2f ms, p90: %.2f ms, p99: %.2f ms, max: %.2f ms",
+                count, failed, seconds, count / Math.max(seconds, 1e-9),
+                getPercentile(sorted, 0.5), getPercentile(sorted, 0.9), getPercentile(sorted, 0.99),
+                getPercentile(sorted, 1.0)));
+
+    }
+
+    @Override
+    public void close() throws IOException {
+        workers.shutdownNow();
+
+        if (!shared) {
+            searches.close();
+        }
+    }
+
+}
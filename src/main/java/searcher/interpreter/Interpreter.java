@@ -8,11 +8,11 @@ import org.jline.reader.LineReaderBuilder;
 import org.jline.terminal.Terminal;
 import org.jline.terminal.TerminalBuilder;
 import searcher.Searches;
-import searcher.result.SearchResult;
+import searcher.result.Page;
+import searcher.search.Search;
 
 import java.io.IOException;
 import java.nio.file.Path;
-import java.util.List;
 import java.util.regex.Pattern;
 
 import static java.lang.String.format;
@@ -22,6 +22,7 @@ public class Interpreter implements AutoCloseable {
     private static final Logger logger = LogManager.getLogger(Interpreter.class);
 
     private static final Pattern propertyPattern = Pattern.compile("%{1}[a-z]+\\s{1}[a-z0-9]+");
+    private static final Pattern scopePattern = Pattern.compile("%scope\\s+\\S.*");
     private static final Pattern searchPattern = Pattern.compile("%{1}[a-z]+");
     private static final Pattern integerPattern = Pattern.compile("0|[1-9]{1}[0-9]*");
 
@@ -30,6 +31,10 @@ public class Interpreter implements AutoCloseable {
 
     private final Searches searches;
     private final Properties properties;
+    private final SearchCompleter completer;
+
+    private Search paged;
+    private Page page;
 
     public Interpreter(Path path, Properties properties) throws IOException {
 
@@ -47,12 +52,14 @@ public class Interpreter implements AutoCloseable {
                 node("%lang", node("pl", "en")),
                 node("%limit"));*/
 
+        this.searches = new Searches(path, properties);
+        this.properties = properties;
+        this.completer = new SearchCompleter(path.resolve("suggest"), searches, properties);
+
         this.reader = LineReaderBuilder.builder()
                 .terminal(terminal)
+                .completer(completer)
                 .build();
-        
-        this.searches = new Searches(path, properties);
-        this.properties = properties;
 
         logger.debug(format("Initialized interpreter with: %s", terminal.toString()));
 
@@ -62,21 +69,52 @@ public class Interpreter implements AutoCloseable {
         this(path, Properties.getDefault());    
     }
     
+    private void show(Page page) {
+
+        if (page.isRestarted()) {
+            terminal.writer().println("Index changed since the search started, showing the first page again");
+        }
+
+        terminal.writer().println(format("File count: %d", page.getResults().size()));
+
+        page.getResults().forEach(terminal.writer()::println);
+
+    }
+
     private void search(String query) throws IOException {
 
-        List<SearchResult> results = searches
-                .forType(properties.getSearchType())
-                .run(query);
+        paged = searches.forType(properties.getSearchType());
+        page = paged.page(query, null);
+
+        show(page);
+    }
+
+    private void next() throws IOException {
 
-        terminal.writer().println(format("File count: %d", results.size()));
+        if (page == null || !page.hasMore()) {
+            terminal.writer().println("File count: 0");
+            return;
+        }
+
+        page = paged.page(page.getQuery(), page);
 
-        results.forEach(terminal.writer()::println);
+        show(page);
     }
     
-    private void eval(String command) {
+    private void eval(String command) throws IOException {
 
         logger.debug(format("Parsed: [%s]", command));
-        properties.setSearchType(command);
+
+        switch (command) {
+            case "stats" :
+                terminal.writer().println(searches.getStatistics()); break;
+            case "next" :
+                next(); break;
+            case "scope" :
+                properties.setSearchScope(null); break;
+            default :
+                properties.setSearchType(command);
+        }
 
     }
     
@@ -112,7 +150,10 @@ public class Interpreter implements AutoCloseable {
 
             String line = reader.readLine("> ").trim();
 
-            if (propertyPattern.matcher(line).matches()) {
+            if (scopePattern.matcher(line).matches()) {
+                properties.setSearchScope(line.substring("%scope".length()));
+                logger.debug(format("Parsed: [scope], with [%s]", properties.getSearchScope()));
+            } else if (propertyPattern.matcher(line).matches()) {
                 String[] lineParts = line.substring(1).split("\\s");
                 eval(lineParts[0], lineParts[1]);
             } else {
@@ -129,6 +170,8 @@ public class Interpreter implements AutoCloseable {
     
     @Override
     public void close() throws IOException {
+        completer.close();
+        searches.close();
         terminal.close();
         logger.debug("Stopped interpreter");
     }
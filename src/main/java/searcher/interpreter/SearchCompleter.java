@@ -1,45 +1,205 @@
 package searcher.interpreter;
 
+import config.Configuration;
+import config.Properties;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.suggest.Lookup;
 import org.apache.lucene.search.suggest.analyzing.AnalyzingInfixSuggester;
+import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
 import org.jline.reader.Candidate;
 import org.jline.reader.Completer;
 import org.jline.reader.LineReader;
 import org.jline.reader.ParsedLine;
+import searcher.Searches;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 import static java.lang.String.format;
 
-public class SearchCompleter implements Completer {
+/**
+ * Completes the last word of a query from the per language suggesters maintained by the indexer,
+ * a suggester is reopened once the indexer commits to it.
+ */
+public class SearchCompleter implements Completer, AutoCloseable {
 
     private static final Logger logger = LogManager.getLogger(SearchCompleter.class);
 
-    private final AnalyzingInfixSuggester suggester;
+    private final Path path;
+    private final Searches searches;
+    private final Properties properties;
 
-    public SearchCompleter(Path path, Analyzer analyzer) throws IOException {
-        this.suggester = new AnalyzingInfixSuggester(FSDirectory.open(path), analyzer);
+    private final Map<String, AnalyzingInfixSuggester> suggesters;
+    private final Map<String, Long> generations;
+    private final Map<String, Long> checked;
+    private final long staleness;
+
+    public SearchCompleter(Path path, Searches searches, Properties properties) {
+        this.path = path;
+        this.searches = searches;
+        this.properties = properties;
+        this.suggesters = new HashMap<>();
+        this.generations = new HashMap<>();
+        this.checked = new HashMap<>();
+        this.staleness = TimeUnit.MILLISECONDS.toNanos(Configuration.Searching.getStalenessMillis());
 
         logger.debug(format("Initialized search completer at: %s", path));
     }
 
+    private synchronized AnalyzingInfixSuggester getSuggester(String language) throws IOException {
+
+        long now = System.nanoTime();
+
+        if (now - checked.getOrDefault(language, now - staleness) < staleness) {
+            return suggesters.get(language);
+        }
+
+        checked.put(language, now);
+
+        if (!Files.isDirectory(path.resolve(language))) {
+            return null;
+        }
+
+        Directory directory = FSDirectory.open(path.resolve(language));
+        long generation = DirectoryReader.indexExists(directory) ?
+                SegmentInfos.getLastCommitGeneration(directory) : -1;
+
+        if (generation != generations.getOrDefault(language, -1L)) {
+
+            AnalyzingInfixSuggester previous = suggesters.remove(language);
+
+            if (previous != null) {
+                previous.close();
+            }
+
+            if (generation != -1) {
+                suggesters.put(language, new AnalyzingInfixSuggester(directory, new StandardAnalyzer()));
+                logger.debug(format("Opened suggester: %s, generation: %d", language, generation));
+            }
+
+            generations.put(language, generation);
+
+        } else {
+            directory.close();
+        }
+
+        return suggesters.get(language);
+
+    }
+
+    /**
+     * Whether a live document still has the term, document frequencies count deleted documents until a merge.
+     */
+    private static boolean isLive(IndexReader reader, String field, String key) throws IOException {
+
+        BytesRef term = new BytesRef(key);
+
+        for (LeafReaderContext leaf : reader.leaves()) {
+
+            Terms terms = leaf.reader().terms(field);
+
+            if (terms == null) {
+                continue;
+            }
+
+            TermsEnum iterator = terms.iterator();
+
+            if (!iterator.seekExact(term)) {
+                continue;
+            }
+
+            Bits live = leaf.reader().getLiveDocs();
+            PostingsEnum postings = iterator.postings(null, PostingsEnum.NONE);
+
+            for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+                if (live == null || live.get(doc)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+
+    }
+
+    private static boolean exists(IndexReader reader, String language, String key) throws IOException {
+        return isLive(reader, format("contents_%s", language), key) || isLive(reader, "name", key);
+    }
+
     @Override
     public void complete(LineReader reader, ParsedLine line, List<Candidate> candidates) {
+
         String word = line.word().substring(0, line.wordCursor());
 
+        if (word.isEmpty() || word.startsWith("%")) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        int limit = Configuration.Searching.getSuggestionLimit();
+
+        List<String> languages = Configuration.Languages.isAll(properties.getSearchLanguage()) ?
+                List.copyOf(Configuration.Languages.getLanguages()) : List.of(properties.getSearchLanguage());
+
         try {
-            List<Lookup.LookupResult> results = suggester.lookup(
-                    word, 5, false, false); // TEMPORARY!
-            results.stream().map(result -> new Candidate(result.key.toString())).forEach(candidates::add);
+            IndexSearcher searcher = searches.acquire();
+
+            try {
+                List<Lookup.LookupResult> results = new ArrayList<>();
+
+                for (String language : languages) {
+                    AnalyzingInfixSuggester suggester = getSuggester(language);
+
+                    if (suggester == null) {
+                        continue;
+                    }
+
+                    for (Lookup.LookupResult result : suggester.lookup(word, (BooleanQuery) null, 2 * limit, true, false)) {
+                        if (exists(searcher.getIndexReader(), language, result.key.toString())) {
+                            results.add(result);
+                        }
+                    }
+                }
+
+                results.stream()
+                        .sorted(Comparator.comparingLong((Lookup.LookupResult result) -> result.value).reversed())
+                        .map(result -> result.key.toString())
+                        .distinct()
+                        .limit(limit)
+                        .map(Candidate::new)
+                        .forEach(candidates::add);
+            }
+            finally {
+                searches.release(searcher);
+            }
         }
-        catch (IOException exception) {
+        catch (IOException | IllegalStateException exception) {
             logger.error(format("Failed to lookup search suggestions, caused by: %s", exception.getMessage()));
         }
+
+        logger.debug(format("Completed: %s, candidates: %d, took: %.1f ms",
+                word, candidates.size(), (System.nanoTime() - start) / 1e6));
+
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+
+        for (AnalyzingInfixSuggester suggester : suggesters.values()) {
+            suggester.close();
+        }
+
     }
 }
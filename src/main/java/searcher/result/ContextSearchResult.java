@@ -1,7 +1,6 @@
 package searcher.result;
 
 import config.Configuration;
-import org.apache.lucene.document.Document;
 
 import static java.lang.String.format;
 
@@ -9,11 +8,20 @@ public class ContextSearchResult extends SearchResult {
 
     private final String context;
 
-    public ContextSearchResult(Document document, String context) {
-        super(document);
+    public ContextSearchResult(String path, float score, String context) {
+        super(path, score);
         this.context = context;
     }
 
+    public String getContext() {
+        return context;
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        return super.ramBytesUsed() + 24 + (context == null ? 0 : 2L * context.length());
+    }
+
     @Override
     public String toString() {
         return format("%s%s\n%s",
@@ -0,0 +1,53 @@
+package searcher.result;
+
+import org.apache.lucene.search.ScoreDoc;
+
+import java.util.List;
+
+public final class Page {
+
+    private final String query;
+    private final List<SearchResult> results;
+    private final ScoreDoc last;
+    private final long version;
+    private final boolean more;
+    private final boolean restarted;
+
+    public Page(String query, List<SearchResult> results, ScoreDoc last, long version, boolean more,
+                boolean restarted) {
+        this.query = query;
+        this.results = results;
+        this.last = last;
+        this.version = version;
+        this.more = more;
+        this.restarted = restarted;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public List<SearchResult> getResults() {
+        return results;
+    }
+
+    public ScoreDoc getLast() {
+        return last;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean hasMore() {
+        return more;
+    }
+
+    /**
+     * Whether the searcher of the previous page was gone, so this is the first page again.
+     */
+    public boolean isRestarted() {
+        return restarted;
+    }
+
+}
@@ -1,16 +1,29 @@
 package searcher.result;
 
 import config.Configuration;
-import org.apache.lucene.document.Document;
 
 import static java.lang.String.format;
 
 public class SearchResult {
 
     private final String path;
+    private final float score;
 
-    public SearchResult(Document document) {
-        this.path = document.get("real_path");
+    public SearchResult(String path, float score) {
+        this.path = path;
+        this.score = score;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public float getScore() {
+        return score;
+    }
+
+    public long ramBytesUsed() {
+        return 40 + 2L * path.length();
     }
 
     @Override
@@ -0,0 +1,111 @@
+package searcher.search;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+import org.apache.lucene.util.automaton.LevenshteinAutomata;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.lang.String.format;
+
+/**
+ * Least recently used Levenshtein automata, one per edit distance up to the maximum, so a repeated
+ * fuzzy term is compiled only once.
+ */
+final class FuzzyAutomata {
+
+    private static final Logger logger = LogManager.getLogger(FuzzyAutomata.class);
+
+    private final int edits;
+    private final int prefix;
+    private final boolean transpositions;
+    private final int capacity;
+
+    private final LinkedHashMap<String, CompiledAutomaton[]> entries;
+
+    private long hits;
+    private long misses;
+
+    FuzzyAutomata(int edits, int prefix, boolean transpositions, int capacity) {
+        this.edits = edits;
+        this.prefix = prefix;
+        this.transpositions = transpositions;
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    private CompiledAutomaton[] compile(String word) {
+
+        long start = System.nanoTime();
+
+        int[] codePoints = word.codePoints().toArray();
+        int prefixLength = Math.min(prefix, codePoints.length);
+
+        LevenshteinAutomata builder = new LevenshteinAutomata(
+                new String(codePoints, prefixLength, codePoints.length - prefixLength), transpositions);
+        String prefixText = new String(codePoints, 0, prefixLength);
+
+        CompiledAutomaton[] automata = new CompiledAutomaton[edits + 1];
+        for (int i = 0; i <= edits; i++) {
+            automata[i] = new CompiledAutomaton(builder.toAutomaton(i, prefixText), true, false);
+        }
+
+        logger.debug(format("Compiled fuzzy automata for: %s, took: %.1f ms", word, (System.nanoTime() - start) / 1e6));
+
+        return automata;
+
+    }
+
+    synchronized CompiledAutomaton[] get(String word) {
+
+        CompiledAutomaton[] automata = entries.get(word);
+
+        if (automata != null) {
+            hits++;
+            return automata;
+        }
+
+        misses++;
+        automata = compile(word);
+
+        if (capacity > 0) {
+            entries.put(word, automata);
+
+            while (entries.size() > capacity) {
+                Map.Entry<String, CompiledAutomaton[]> eldest = entries.entrySet().iterator().next();
+                entries.remove(eldest.getKey());
+            }
+        }
+
+        return automata;
+
+    }
+
+    /**
+     * Smallest edit distance accepting the term, or -1 if the term is too far.
+     */
+    static int getDistance(CompiledAutomaton[] automata, BytesRef term) {
+
+        for (int i = 0; i < automata.length; i++) {
+            if (automata[i].runAutomaton.run(term.bytes, term.offset, term.length)) {
+                return i;
+            }
+        }
+
+        return -1;
+
+    }
+
+    static float getBoost(int distance, int length, String term) {
+        return distance <= 0 ? 1.0f : 1.0f - (float) distance / Math.min(length, term.codePointCount(0, term.length()));
+    }
+
+    @Override
+    public synchronized String toString() {
+        return format("entries: %d of %d, hits: %d, misses: %d", entries.size(), capacity, hits, misses);
+    }
+
+}
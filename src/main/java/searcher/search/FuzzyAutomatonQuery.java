@@ -0,0 +1,69 @@
+package searcher.search;
+
+import org.apache.lucene.index.FilteredTermsEnum;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.BoostAttribute;
+import org.apache.lucene.search.MultiTermQuery;
+import org.apache.lucene.util.AttributeSource;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+
+import java.io.IOException;
+import java.util.Objects;
+
+import static java.lang.String.format;
+
+/**
+ * Fuzzy query over already compiled automata, terms are boosted by their edit distance
+ * and the best ones blended like in a FuzzyQuery.
+ */
+final class FuzzyAutomatonQuery extends MultiTermQuery {
+
+    private final Term term;
+    private final CompiledAutomaton[] automata;
+    private final int length;
+
+    FuzzyAutomatonQuery(Term term, CompiledAutomaton[] automata, int expansions) {
+        super(term.field());
+        this.term = term;
+        this.automata = automata;
+        this.length = term.text().codePointCount(0, term.text().length());
+        setRewriteMethod(new MultiTermQuery.TopTermsBlendedFreqScoringRewrite(expansions));
+    }
+
+    @Override
+    protected TermsEnum getTermsEnum(Terms terms, AttributeSource attributes) throws IOException {
+
+        return new FilteredTermsEnum(automata[automata.length - 1].getTermsEnum(terms), false) {
+
+            private final BoostAttribute boost = attributes().addAttribute(BoostAttribute.class);
+
+            @Override
+            protected AcceptStatus accept(BytesRef candidate) {
+                boost.setBoost(FuzzyAutomata.getBoost(
+                        FuzzyAutomata.getDistance(automata, candidate), length, candidate.utf8ToString()));
+                return AcceptStatus.YES;
+            }
+        };
+
+    }
+
+    @Override
+    public String toString(String field) {
+        return format("%s~%d", Objects.equals(term.field(), field) ? term.text() : term.toString(), automata.length - 1);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return super.equals(other) && term.equals(((FuzzyAutomatonQuery) other).term) &&
+                automata.length == ((FuzzyAutomatonQuery) other).automata.length;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * super.hashCode() + Objects.hash(term, automata.length);
+    }
+
+}
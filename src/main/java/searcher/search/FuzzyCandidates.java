@@ -0,0 +1,161 @@
+package searcher.search;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static java.lang.String.format;
+
+/**
+ * N-gram tables of the terms of a field, built once per segment and dropped together with the segment,
+ * so a new index version only costs the segments it adds and removed terms go away with theirs.
+ */
+final class FuzzyCandidates {
+
+    private static final Logger logger = LogManager.getLogger(FuzzyCandidates.class);
+
+    private static final class Grams {
+
+        private final String[] terms;
+        private final Map<String, int[]> postings;
+
+        private Grams(String[] terms, Map<String, int[]> postings) {
+            this.terms = terms;
+            this.postings = postings;
+        }
+    }
+
+    private final int edits;
+    private final Map<IndexReader.CacheKey, Map<String, Grams>> segments;
+
+    FuzzyCandidates(int edits) {
+        this.edits = edits;
+        this.segments = new ConcurrentHashMap<>();
+    }
+
+    private static int getSize(String word) {
+        return word.length() < 5 ? 2 : 3;
+    }
+
+    private static Set<String> getGrams(String word, int size) {
+
+        String padded = format("^%s$", word);
+        Set<String> grams = new HashSet<>();
+
+        for (int i = 0; i + size <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + size));
+        }
+
+        return grams;
+
+    }
+
+    private static Grams build(LeafReader reader, String field) throws IOException {
+
+        long start = System.nanoTime();
+        Terms indexed = reader.terms(field);
+
+        List<String> terms = new ArrayList<>();
+        Map<String, List<Integer>> postings = new HashMap<>();
+
+        if (indexed != null) {
+
+            TermsEnum iterator = indexed.iterator();
+
+            for (BytesRef term = iterator.next(); term != null; term = iterator.next()) {
+
+                String text = term.utf8ToString();
+
+                for (int size = 2; size <= 3; size++) {
+                    for (String gram : getGrams(text, size)) {
+                        postings.computeIfAbsent(gram, key -> new ArrayList<>()).add(terms.size());
+                    }
+                }
+
+                terms.add(text);
+            }
+        }
+
+        Grams grams = new Grams(terms.toArray(String[]::new), postings.entrySet().stream().collect(
+                Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().stream().mapToInt(Integer::intValue).toArray())));
+
+        logger.debug(format("Built n-gram table of: %s, terms: %d, grams: %d, took: %.1f ms",
+                field, grams.terms.length, grams.postings.size(), (System.nanoTime() - start) / 1e6));
+
+        return grams;
+
+    }
+
+    private Grams get(LeafReaderContext leaf, String field) throws IOException {
+
+        IndexReader.CacheHelper helper = leaf.reader().getCoreCacheHelper();
+
+        if (helper == null) {
+            return build(leaf.reader(), field);
+        }
+
+        Map<String, Grams> fields = segments.computeIfAbsent(helper.getKey(), key -> {
+            helper.addClosedListener(segments::remove);
+            return new ConcurrentHashMap<>();
+        });
+
+        Grams grams = fields.get(field);
+
+        if (grams == null) {
+            grams = build(leaf.reader(), field);
+            fields.putIfAbsent(field, grams);
+        }
+
+        return grams;
+
+    }
+
+    /**
+     * Terms of the field sharing enough n-grams with the word to be within the maximum edit distance,
+     * most shared first. Every edit breaks at most as many grams as a gram is long.
+     */
+    List<String> get(IndexReader reader, String field, String word, int limit) throws IOException {
+
+        int size = getSize(word);
+        Set<String> grams = getGrams(word, size);
+        int required = Math.max(1, grams.size() - edits * size);
+
+        Map<String, Integer> shared = new HashMap<>();
+
+        for (LeafReaderContext leaf : reader.leaves()) {
+
+            Grams table = get(leaf, field);
+            int[] counts = new int[table.terms.length];
+
+            for (String gram : grams) {
+                for (int term : table.postings.getOrDefault(gram, new int[0])) {
+                    counts[term]++;
+                }
+            }
+
+            for (int term = 0; term < counts.length; term++) {
+                if (counts[term] >= required && Math.abs(table.terms[term].length() - word.length()) <= edits) {
+                    shared.merge(table.terms[term], counts[term], Math::max);
+                }
+            }
+        }
+
+        return shared.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+
+    }
+
+}
@@ -1,21 +1,142 @@
 package searcher.search;
 
+import config.Configuration;
 import config.Properties;
-import searcher.Searches;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
-import org.apache.lucene.search.FuzzyQuery;
-import org.apache.lucene.search.Query;
+import org.apache.lucene.search.*;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+import searcher.Searches;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
 
 import static java.lang.String.format;
 
 public class FuzzySearch extends Search {
 
+    private static final Logger logger = LogManager.getLogger(FuzzySearch.class);
+
+    private final FuzzyAutomata automata;
+    private final FuzzyCandidates candidates;
+
     public FuzzySearch(Searches searches, Properties properties) {
         super(searches, properties);
+        this.automata = new FuzzyAutomata(Configuration.Searching.getFuzzyEdits(),
+                Configuration.Searching.getFuzzyPrefix(), Configuration.Searching.isFuzzyTranspositions(),
+                Configuration.Searching.getFuzzyAutomata());
+        this.candidates = new FuzzyCandidates(Configuration.Searching.getFuzzyEdits());
+    }
+
+    private List<String> getWords(String query, String language) throws IOException {
+
+        Set<String> words = new LinkedHashSet<>();
+
+        try (TokenStream stream = searches.getAnalyzer(language).tokenStream(getField(language), query)) {
+
+            CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+
+            while (stream.incrementToken()) {
+                words.add(term.toString());
+            }
+
+            stream.end();
+        }
+
+        if (words.isEmpty()) {
+            Arrays.stream(query.toLowerCase(Locale.ROOT).split("\\s+"))
+                    .filter(word -> !word.isEmpty())
+                    .forEach(words::add);
+        }
+
+        return List.copyOf(words);
+
+    }
+
+    private Query getCandidatesQuery(IndexReader reader, String language, String word,
+                                     CompiledAutomaton[] compiled) throws IOException {
+
+        String field = getField(language);
+        int length = word.codePointCount(0, word.length());
+        int expansions = Configuration.Searching.getFuzzyExpansions();
+
+        BlendedTermQuery.Builder builder = new BlendedTermQuery.Builder()
+                .setRewriteMethod(BlendedTermQuery.BOOLEAN_REWRITE);
+        int added = 0;
+
+        if (reader.docFreq(new Term(field, word)) > 0) {
+            builder.add(new Term(field, word));
+            added++;
+        }
+
+        for (String candidate : candidates.get(reader, field, word, 4 * expansions)) {
+
+            if (added >= expansions) {
+                break;
+            }
+
+            int distance = FuzzyAutomata.getDistance(compiled, new BytesRef(candidate));
+
+            if (distance > 0) {
+                builder.add(new Term(field, candidate), FuzzyAutomata.getBoost(distance, length, candidate));
+                added++;
+            }
+        }
+
+        return builder.build();
+
+    }
+
+    private Query getQuery(IndexReader reader, String language, String word) throws IOException {
+
+        CompiledAutomaton[] compiled = automata.get(word);
+
+        if (Configuration.Searching.isFuzzyNgrams()) {
+            return getCandidatesQuery(reader, language, word, compiled);
+        }
+
+        return new FuzzyAutomatonQuery(new Term(getField(language), word), compiled,
+                Configuration.Searching.getFuzzyExpansions());
+
+    }
+
+    @Override
+    protected Query getQuery(IndexSearcher searcher, String query, String language) {
+
+        try {
+            List<String> words = getWords(query, language);
+
+            if (words.size() == 1) {
+                return getQuery(searcher.getIndexReader(), language, words.get(0));
+            }
+
+            BooleanQuery.Builder builder = new BooleanQuery.Builder();
+            for (String word : words) {
+                builder.add(getQuery(searcher.getIndexReader(), language, word), BooleanClause.Occur.SHOULD);
+            }
+
+            return builder.build();
+        }
+        catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+
+    }
+
+    @Override
+    protected Query getHighlightQuery(IndexSearcher searcher, Query query) throws IOException {
+        return searcher.rewrite(query);
     }
 
     @Override
-    protected Query getQuery(String query) {
-        return new FuzzyQuery(new Term(format("contents_%s", properties.getSearchLanguage()), query));
+    public void close() throws IOException {
+        logger.debug(format("Fuzzy automata cache, %s", automata));
     }
 }
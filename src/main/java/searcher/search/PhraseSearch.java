@@ -6,12 +6,11 @@ import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 
 import java.util.Arrays;
 
-import static java.lang.String.format;
-
 public class PhraseSearch extends Search {
 
     public PhraseSearch(Searches searches, Properties properties) {
@@ -19,18 +18,18 @@ public class PhraseSearch extends Search {
     }
 
     @Override
-    protected Query getQuery(String query) {
+    protected Query getQuery(IndexSearcher searcher, String query, String language) {
 
         try {
-            QueryParser parser = new QueryParser(format("contents_%s", properties.getSearchLanguage()),
-                    searches.getAnalyzer(properties.getSearchLanguage()));
+            QueryParser parser = new QueryParser(getField(language),
+                    searches.getAnalyzer(language));
 
             return parser.parse(query);
         }
         catch (ParseException exception) {
             PhraseQuery.Builder builder = new PhraseQuery.Builder();
             Arrays.stream(query.split("\\s+")).forEach(term ->
-                    builder.add(new Term(format("contents_%s", properties.getSearchLanguage()), term)));
+                    builder.add(new Term(getField(language), term)));
 
             return builder.build();
         }
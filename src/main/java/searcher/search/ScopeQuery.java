@@ -0,0 +1,69 @@
+package searcher.search;
+
+import indexer.index.Index;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.*;
+import org.apache.lucene.util.BitSetIterator;
+import org.apache.lucene.util.FixedBitSet;
+import searcher.ScopeFilters;
+
+import java.io.IOException;
+
+import static java.lang.String.format;
+
+/**
+ * Matches the documents under a directory from the cached per segment bitsets, meant as a filter clause.
+ */
+final class ScopeQuery extends Query {
+
+    private final String scope;
+    private final ScopeFilters filters;
+
+    ScopeQuery(String scope, ScopeFilters filters) {
+        this.scope = scope;
+        this.filters = filters;
+    }
+
+    @Override
+    public Weight createWeight(IndexSearcher searcher, ScoreMode scoreMode, float boost) throws IOException {
+
+        boolean hierarchical = searcher.getIndexReader() instanceof DirectoryReader &&
+                Index.isHierarchical((DirectoryReader) searcher.getIndexReader());
+
+        return new ConstantScoreWeight(this, boost) {
+
+            @Override
+            public Scorer scorer(LeafReaderContext context) throws IOException {
+
+                FixedBitSet bits = filters.get(context, scope, hierarchical);
+                int cardinality = bits.cardinality();
+
+                return cardinality == 0 ? null :
+                        new ConstantScoreScorer(this, score(), scoreMode, new BitSetIterator(bits, cardinality));
+            }
+
+            @Override
+            public boolean isCacheable(LeafReaderContext context) {
+                return false;
+            }
+        };
+
+    }
+
+    @Override
+    public String toString(String field) {
+        return format("scope:%s", scope);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return sameClassAs(other) && scope.equals(((ScopeQuery) other).scope);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * classHash() + scope.hashCode();
+    }
+
+}
@@ -1,24 +1,28 @@
 package searcher.search;
 
+import config.Configuration;
 import config.Properties;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.search.Query;
-import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.*;
+import org.apache.lucene.search.uhighlight.UnifiedHighlighter;
 import searcher.Searches;
 import searcher.result.ContextSearchResult;
+import searcher.result.Page;
 import searcher.result.SearchResult;
 
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.List;
+import java.io.InterruptedIOException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import static java.lang.String.format;
 
-public abstract class Search { // logging, reconsider
+public abstract class Search implements AutoCloseable { // logging, reconsider
 
     private static final Logger logger = LogManager.getLogger(Search.class);
 
@@ -30,50 +34,329 @@ public abstract class Search { // logging, reconsider
         this.properties = properties;
     }
 
-    protected abstract Query getQuery(String query);
+    private static final Set<String> pathFields = Set.of("real_path");
 
-    private Document[] getDocuments(TopDocs tops) throws IOException {
+    /**
+     * Query of a single language, terms it expands to are looked up in the searcher it runs on.
+     */
+    protected abstract Query getQuery(IndexSearcher searcher, String query, String language);
 
-        Document[] documents = new Document[tops.scoreDocs.length];
-        for (int i = 0; i < tops.scoreDocs.length; i++) {
-            documents[i] = searches.getSearcher().doc(tops.scoreDocs[i].doc);
+    protected static String getField(String language) {
+        return format("contents_%s", language);
+    }
+
+    private List<String> getLanguages() {
+        return Configuration.Languages.isAll(properties.getSearchLanguage()) ?
+                List.copyOf(Configuration.Languages.getLanguages()) : List.of(properties.getSearchLanguage());
+    }
+
+    private Query[] getQueries(IndexSearcher searcher, String query) {
+        return getLanguages().stream().map(language -> getQuery(searcher, query, language)).toArray(Query[]::new);
+    }
+
+    private String[] getPaths(IndexSearcher searcher, ScoreDoc[] hits) throws IOException {
+
+        String[] paths = new String[hits.length];
+        List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+
+        int[] order = IntStream.range(0, hits.length).boxed()
+                .sorted(Comparator.comparingInt(index -> hits[index].doc))
+                .mapToInt(Integer::intValue).toArray();
+
+        LeafReaderContext leaf = null;
+        BinaryDocValues values = null;
+
+        for (int index : order) {
+
+            int doc = hits[index].doc;
+
+            if (leaf == null || doc >= leaf.docBase + leaf.reader().maxDoc()) {
+                leaf = leaves.get(ReaderUtil.subIndex(doc, leaves));
+                values = DocValues.getBinary(leaf.reader(), "real_path");
+            }
+
+            if (values.advanceExact(doc - leaf.docBase)) {
+                paths[index] = values.binaryValue().utf8ToString();
+            } else {
+                paths[index] = searcher.doc(doc, pathFields).get("real_path");
+            }
         }
-        return documents;
 
+        return paths;
+
+    }
+
+    /**
+     * Query handed to the highlighter, which only understands the built in query types.
+     */
+    protected Query getHighlightQuery(IndexSearcher searcher, Query query) throws IOException {
+        return query;
     }
 
-    private String[] getContexts(TopDocs tops, Query queries) throws IOException {
+    private String[] getContexts(IndexSearcher searcher, TopDocs tops, Query[] searched) throws IOException {
+
+        Query[] queries = new Query[searched.length];
+        for (int i = 0; i < searched.length; i++) {
+            queries[i] = getHighlightQuery(searcher, searched[i]);
+        }
+
+        UnifiedHighlighter highlighter = searches.getHighlighter(
+                searcher, properties.getSearchLanguage(), properties.getContextColor());
+        List<String> languages = getLanguages();
+
+        if (languages.size() == 1) {
+            return highlighter.highlight(getField(languages.get(0)), queries[0], tops, properties.getContextPassage());
+        }
+
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        Arrays.stream(queries).forEach(query -> builder.add(query, BooleanClause.Occur.SHOULD));
+
+        String[] fields = languages.stream().map(Search::getField).toArray(String[]::new);
+        int[] passages = new int[fields.length];
+        Arrays.fill(passages, properties.getContextPassage());
+
+        Map<String, String[]> highlights = highlighter.highlightFields(fields, builder.build(), tops, passages);
+        String[] contexts = new String[tops.scoreDocs.length];
+
+        for (int i = 0; i < contexts.length; i++) {
+            for (String field : fields) {
+                if (highlights.get(field)[i] != null) {
+                    contexts[i] = highlights.get(field)[i];
+                    break;
+                }
+            }
+        }
 
-        return searches.getHighlighter(properties.getSearchLanguage(), properties.getContextColor())
-                .highlight(format("contents_%s", properties.getSearchLanguage()),
-                        queries, tops, properties.getContextPassage());
+        return contexts;
 
     }
 
-    public List<SearchResult> run(String query) throws IOException {
+    private String getKey(String query) {
+        return format("%s|%s|%s|%d|%s|%s|%d|%s", getClass().getSimpleName(),
+                properties.getSearchLanguage(), properties.getSearchScope(), properties.getSearchLimit(),
+                properties.getContextDetails(), properties.getContextColor(), properties.getContextPassage(), query);
+    }
 
-        Query queries = getQuery(query);
-        TopDocs tops = searches.getSearcher().search(queries, properties.getSearchLimit());
-        System.out.println(properties.getSearchLimit());
+    private Query getScoped(Query query) {
+
+        if (properties.getSearchScope() == null) {
+            return query;
+        }
+
+        return new BooleanQuery.Builder()
+                .add(query, BooleanClause.Occur.MUST)
+                .add(new ScopeQuery(properties.getSearchScope(), searches.getScopeFilters()), BooleanClause.Occur.FILTER)
+                .build();
+
+    }
 
-        logger.debug(format("Search: %s, results: %s", queries, Arrays.toString(tops.scoreDocs)));
+    private List<SearchResult> getResults(IndexSearcher searcher, TopDocs tops, Query[] queries) throws IOException {
 
-        Document[] documents = getDocuments(tops);
+        String[] paths = getPaths(searcher, tops.scoreDocs);
 
         if (properties.getContextDetails()) {
 
-            String[] contexts = getContexts(tops, queries);
-            return IntStream.range(0, documents.length).mapToObj(index ->
-                    new ContextSearchResult(documents[index], contexts[index]))
+            String[] contexts = getContexts(searcher, tops, queries);
+            return IntStream.range(0, paths.length).mapToObj(index ->
+                    new ContextSearchResult(paths[index], tops.scoreDocs[index].score, contexts[index]))
                     .collect(Collectors.toList());
 
         } else {
 
-            return Arrays.stream(documents).map(SearchResult::new)
+            return IntStream.range(0, paths.length).mapToObj(index ->
+                    new SearchResult(paths[index], tops.scoreDocs[index].score))
                     .collect(Collectors.toList());
 
         }
 
     }
 
+    private TopDocs search(IndexSearcher searcher, Query unscoped, ScoreDoc after, int size) throws IOException {
+
+        Query query = getScoped(unscoped);
+        TopDocs tops = after == null ? searcher.search(query, size) : searcher.searchAfter(after, query, size);
+        logger.debug(format("Search: %s, after: %s, results: %s", query, after, Arrays.toString(tops.scoreDocs)));
+        return tops;
+
+    }
+
+    /**
+     * Runs the per language queries concurrently, each field holds different documents,
+     * so the hits are merged by score and then by doc id, the order searchAfter continues from.
+     */
+    private TopDocs search(IndexSearcher searcher, Query[] queries, ScoreDoc after, int size) throws IOException {
+
+        if (queries.length == 1) {
+            return search(searcher, queries[0], after, size);
+        }
+
+        List<Future<TopDocs>> futures = Arrays.stream(queries)
+                .map(query -> searches.getExecutor().submit(() -> search(searcher, query, after, size)))
+                .collect(Collectors.toList());
+
+        List<ScoreDoc> hits = new ArrayList<>();
+        long total = 0;
+        TotalHits.Relation relation = TotalHits.Relation.EQUAL_TO;
+
+        try {
+            for (Future<TopDocs> future : futures) {
+                TopDocs tops = future.get();
+                hits.addAll(Arrays.asList(tops.scoreDocs));
+                total += tops.totalHits.value;
+
+                if (tops.totalHits.relation != TotalHits.Relation.EQUAL_TO) {
+                    relation = tops.totalHits.relation;
+                }
+            }
+        }
+        catch (ExecutionException exception) {
+            futures.forEach(future -> future.cancel(true));
+            throw exception.getCause() instanceof IOException ?
+                    (IOException) exception.getCause() : new IOException(exception.getCause());
+        }
+        catch (InterruptedException exception) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(exception.getMessage());
+        }
+
+        return new TopDocs(new TotalHits(total, relation), hits.stream()
+                .sorted(Comparator.comparingDouble((ScoreDoc hit) -> -hit.score).thenComparingInt(hit -> hit.doc))
+                .limit(size)
+                .toArray(ScoreDoc[]::new));
+
+    }
+
+    /**
+     * Collects every hit a page at a time.
+     */
+    private List<SearchResult> search(IndexSearcher searcher, String query) throws IOException {
+
+        Query[] queries = getQueries(searcher, query);
+        List<SearchResult> results = new ArrayList<>();
+        int size = Configuration.Searching.getPageSize();
+        ScoreDoc after = null;
+
+        for (TopDocs tops = search(searcher, queries, null, size); tops.scoreDocs.length > 0;
+             tops = search(searcher, queries, after, size)) {
+
+            results.addAll(getResults(searcher, tops, queries));
+            after = tops.scoreDocs[tops.scoreDocs.length - 1];
+
+            if (tops.scoreDocs.length < size) {
+                break;
+            }
+        }
+
+        return results;
+
+    }
+
+    private int getPageSize() {
+        return properties.getSearchLimit() != Integer.MAX_VALUE ?
+                properties.getSearchLimit() : Configuration.Searching.getPageSize();
+    }
+
+    private Page search(IndexSearcher searcher, String query, ScoreDoc after, long version) throws IOException {
+
+        int size = getPageSize();
+        Query[] queries = getQueries(searcher, query);
+        TopDocs tops = search(searcher, queries, after, size);
+
+        return new Page(query, List.copyOf(getResults(searcher, tops, queries)),
+                tops.scoreDocs.length > 0 ? tops.scoreDocs[tops.scoreDocs.length - 1] : after,
+                version, tops.scoreDocs.length == size, false);
+
+    }
+
+    /**
+     * First page of the query, from the result cache when possible.
+     */
+    private Page first(IndexSearcher searcher, String query) throws IOException {
+
+        long version = ((DirectoryReader) searcher.getIndexReader()).getVersion();
+        String key = properties.getSearchLimit() != Integer.MAX_VALUE ?
+                getKey(query) : format("%s|%d", getKey(query), getPageSize());
+
+        Page page = searches.getResultCache().get(version, key);
+
+        if (page == null) {
+            page = search(searcher, query, null, version);
+            searches.getResultCache().put(version, key, page);
+        } else {
+            logger.debug(format("Search: %s, served from cache", key));
+        }
+
+        return page;
+
+    }
+
+    /**
+     * Returns the page following the previous one, or the first page without one. Every page of a session
+     * is read from the searcher of its first page, once that searcher is pruned the session starts over.
+     */
+    public Page page(String query, Page previous) throws IOException {
+
+        IndexSearcher searcher = previous == null ? null : searches.acquire(previous.getVersion());
+        boolean restarted = previous != null && searcher == null;
+
+        if (restarted) {
+            logger.info(format("Searcher of version: %d is gone, restarting from the first page",
+                    previous.getVersion()));
+        }
+
+        if (searcher == null) {
+            searcher = searches.acquire();
+        }
+
+        try {
+            if (previous != null && !restarted) {
+                return search(searcher, query, previous.getLast(), previous.getVersion());
+            }
+
+            searches.record(searcher);
+            Page page = first(searcher, query);
+
+            return restarted ? new Page(page.getQuery(), page.getResults(), page.getLast(), page.getVersion(),
+                    page.hasMore(), true) : page;
+        }
+        finally {
+            searches.release(searcher);
+        }
+
+    }
+
+    public List<SearchResult> run(String query) throws IOException {
+
+        IndexSearcher searcher = searches.acquire();
+
+        try {
+            if (properties.getSearchLimit() != Integer.MAX_VALUE) {
+                return first(searcher, query).getResults();
+            }
+
+            long version = ((DirectoryReader) searcher.getIndexReader()).getVersion();
+            String key = getKey(query);
+
+            Page page = searches.getResultCache().get(version, key);
+
+            if (page == null) {
+                page = new Page(query, List.copyOf(search(searcher, query)), null, version, false, false);
+                searches.getResultCache().put(version, key, page);
+            } else {
+                logger.debug(format("Search: %s, served from cache", key));
+            }
+
+            return page.getResults();
+        }
+        finally {
+            searches.release(searcher);
+        }
+
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+
 }
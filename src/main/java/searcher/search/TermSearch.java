@@ -5,11 +5,10 @@ import searcher.Searches;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
 
-import static java.lang.String.format;
-
 public class TermSearch extends Search {
 
     public TermSearch(Searches searches, Properties properties) {
@@ -17,15 +16,15 @@ public class TermSearch extends Search {
     }
 
     @Override
-    protected Query getQuery(String query) {
+    protected Query getQuery(IndexSearcher searcher, String query, String language) {
         try {
-            QueryParser parser = new QueryParser(format("contents_%s", properties.getSearchLanguage()),
-                    searches.getAnalyzer(properties.getSearchLanguage()));
+            QueryParser parser = new QueryParser(getField(language),
+                    searches.getAnalyzer(language));
 
             return parser.parse(query);
         }
         catch (ParseException exception) {
-            return new TermQuery(new Term(format("contents_%s", properties.getSearchLanguage()), query));
+            return new TermQuery(new Term(getField(language), query));
         }
     }
 }